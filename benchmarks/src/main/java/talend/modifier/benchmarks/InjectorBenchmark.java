@@ -0,0 +1,74 @@
+package talend.modifier.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import talend.modifier.ExternalCode;
+import talend.modifier.LoggerInjector;
+import talend.modifier.StatusInjector;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Complete load/mutate/save cycle of the injectors. Every invocation starts from a pristine copy of the
+ * item, so the injection is never skipped as already done.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dmodifier.manifest=false"})
+public class InjectorBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int nodeCount;
+
+    private Path dir;
+    private Path pristineJob;
+    private Path pristineService;
+    private Path job;
+    private Path service;
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void createItems() throws Exception {
+        dir = Files.createTempDirectory("injector-benchmark");
+        pristineJob = dir.resolve("pristine_job.xml");
+        pristineService = dir.resolve("pristine_service.xml");
+        SyntheticItems.writeJob(pristineJob, nodeCount, false);
+        SyntheticItems.writeJob(pristineService, nodeCount, true);
+        job = dir.resolve("process").resolve("job_0.1.item");
+        service = dir.resolve("process").resolve("service_0.1.item");
+        Files.createDirectories(job.getParent());
+
+        // The injectors report their progress on standard output, which is not part of the measurement.
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @Setup(Level.Invocation)
+    public void resetItems() throws Exception {
+        Files.copy(pristineJob, job, StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(pristineService, service, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteItems() throws Exception {
+        System.setOut(originalOut);
+        SyntheticItems.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void injectLoggerCode() throws Exception {
+        LoggerInjector.processItemFile(job.toString(), ExternalCode.T_JAVA_LOGCONFIG_CODE);
+    }
+
+    @Benchmark
+    public void injectStatus() {
+        StatusInjector.injectStatusToService(service.toString());
+    }
+}
@@ -0,0 +1,66 @@
+package talend.modifier.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.w3c.dom.Document;
+import talend.modifier.FileHelper;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and serialization of job items of increasing size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dmodifier.manifest=false"})
+public class ItemIoBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int nodeCount;
+
+    private Path dir;
+    private Path item;
+    private Path target;
+    private Document doc;
+
+    @Setup(Level.Trial)
+    public void createItem() throws Exception {
+        dir = Files.createTempDirectory("item-io-benchmark");
+        item = dir.resolve("job_0.1.item");
+        target = dir.resolve("saved_0.1.item");
+        SyntheticItems.writeJob(item, nodeCount, false);
+        doc = FileHelper.loadDocument(item.toString());
+    }
+
+    @Setup(Level.Invocation)
+    public void deleteTarget() throws Exception {
+        Files.deleteIfExists(target);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteItem() throws Exception {
+        SyntheticItems.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public Document loadDocument() throws Exception {
+        return FileHelper.loadDocument(item.toString());
+    }
+
+    @Benchmark
+    public boolean saveDocument() throws Exception {
+        return FileHelper.saveDocument(doc, target.toString());
+    }
+
+    /**
+     * Saving a document over an item with identical content, which is detected and skipped.
+     */
+    @Benchmark
+    public boolean saveUnchangedDocument() throws Exception {
+        return FileHelper.saveDocument(doc, item.toString());
+    }
+}
@@ -0,0 +1,73 @@
+package talend.modifier.benchmarks;
+
+import org.w3c.dom.Document;
+import talend.modifier.WorkspaceGenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Creates the synthetic items the benchmarks run against with the {@link WorkspaceGenerator}, using a fixed
+ * seed so every run measures the same input.
+ */
+final class SyntheticItems {
+
+    private static final long SEED = 42;
+
+    private SyntheticItems() {
+    }
+
+    /**
+     * Writes a job with a chain of nodes and a quarter as many additional flow connections.
+     *
+     * @param file            the item to write
+     * @param nodeCount       the number of nodes, including the tPrejob
+     * @param withRestRequest whether the job is a service with a tRESTRequest
+     */
+    static void writeJob(Path file, int nodeCount, boolean withRestRequest) throws Exception {
+        Random random = new Random(SEED);
+        Document doc = withRestRequest
+            ? WorkspaceGenerator.newService(nodeCount, random)
+            : WorkspaceGenerator.newJob(nodeCount, nodeCount / 4, List.of(), random);
+        WorkspaceGenerator.writeItem(doc, file);
+    }
+
+    /**
+     * Writes a project with small jobs and a single route referencing them.
+     *
+     * @param projectDir      the project directory
+     * @param jobCount        the number of distinct jobs
+     * @param versionsPerJob  the number of versions of every job
+     * @param refCount        the number of cTalendJob nodes of the route
+     * @return the route item
+     */
+    static Path writeProject(Path projectDir, int jobCount, int versionsPerJob, int refCount) throws Exception {
+        WorkspaceGenerator.generate(projectDir, new WorkspaceGenerator.Settings()
+            .jobs(jobCount)
+            .versionsPerJob(versionsPerJob)
+            .nodesPerJob(2)
+            .extraConnectionsPerJob(0)
+            .services(0)
+            .routes(1)
+            .referencesPerRoute(refCount)
+            .seed(SEED));
+        return projectDir.resolve("routes").resolve(WorkspaceGenerator.routeName(0) + "_0.1.item");
+    }
+
+    /**
+     * Deletes a directory tree created for a benchmark.
+     */
+    static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package talend.modifier.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import talend.modifier.LatestVersionResolver;
+import talend.modifier.RouteItemHelper;
+import talend.modifier.WorkspaceGenerator;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolution of job versions in process trees of increasing size, both for single "Latest" lookups and for
+ * all cTalendJob references of a route.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dmodifier.manifest=false"})
+public class VersionResolutionBenchmark {
+
+    private static final int VERSIONS_PER_JOB = 10;
+
+    @Param({"100", "1000"})
+    public int jobCount;
+
+    @Param({"10", "100"})
+    public int routeReferenceCount;
+
+    private Path dir;
+    private File processDir;
+    private String route;
+    private String lastJobName;
+
+    @Setup(Level.Trial)
+    public void createWorkspace() throws Exception {
+        dir = Files.createTempDirectory("version-resolution-benchmark");
+        System.setProperty("modifier.cache.dir", dir.resolve("cache").toString());
+
+        Path project = dir.resolve("P");
+        route = SyntheticItems.writeProject(project, jobCount, VERSIONS_PER_JOB, routeReferenceCount).toString();
+        processDir = project.resolve("process").toFile();
+        lastJobName = WorkspaceGenerator.jobName(jobCount - 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteWorkspace() throws Exception {
+        LatestVersionResolver.clearCache();
+        SyntheticItems.deleteRecursively(dir);
+    }
+
+    /**
+     * Lookup with a cold cache, i.e. including the walk of the process tree.
+     */
+    @Benchmark
+    public Optional<String> findLatestVersionCold() throws Exception {
+        LatestVersionResolver.clearCache();
+        return LatestVersionResolver.findLatestVersion(processDir, lastJobName);
+    }
+
+    @Benchmark
+    public Optional<String> findLatestVersionWarm() throws Exception {
+        return LatestVersionResolver.findLatestVersion(processDir, lastJobName);
+    }
+
+    @Benchmark
+    public Map<String, String> resolveRouteJobs() throws Exception {
+        return RouteItemHelper.getJobNamesAndVersionsByRouteItemPath(route);
+    }
+}
@@ -0,0 +1,51 @@
+package talend.modifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Utility class for splitting a line of text into arguments.
+ * <p>
+ * Used for the command lines read by the {@link Daemon} and for the lines of a rule file read by
+ * {@link InjectionRules}, which share the same quoting.
+ */
+public class ArgumentHelper {
+
+    /**
+     * Splits a line at whitespace; double quotes group an argument containing whitespace.
+     *
+     * @param line the line to split
+     * @return the arguments, empty if the line is blank
+     * @throws IllegalArgumentException if a quote is not closed
+     */
+    public static List<String> splitArguments(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        boolean inArgument = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                inArgument = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (inArgument) {
+                    args.add(current.toString());
+                    current.setLength(0);
+                    inArgument = false;
+                }
+            } else {
+                current.append(c);
+                inArgument = true;
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote in: " + line);
+        }
+        if (inArgument) {
+            args.add(current.toString());
+        }
+        return args;
+    }
+}
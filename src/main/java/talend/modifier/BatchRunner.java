@@ -0,0 +1,292 @@
+package talend.modifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Utility class for running an injector over many items of a workspace at once.
+ * <p>
+ * Every item is still loaded, modified and saved on its own, but the items are spread over a bounded
+ * pool of worker threads. A failure of one item never stops the others; all outcomes are collected and
+ * printed as a summary at the end of the run.
+ */
+public class BatchRunner {
+
+    /**
+     * A unit of work executed for a single item file.
+     */
+    @FunctionalInterface
+    public interface ItemTask {
+        void process(String itemPath) throws Exception;
+    }
+
+    /**
+     * Outcome of processing a single item.
+     */
+    public static class ItemResult {
+        private final String itemPath;
+        private final Throwable error;
+        private final long elapsedMillis;
+
+        ItemResult(String itemPath, Throwable error, long elapsedMillis) {
+            this.itemPath = itemPath;
+            this.error = error;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public String getItemPath() {
+            return itemPath;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    /**
+     * Finds all job items of a workspace, i.e. {@code .item} files located somewhere below a
+     * {@code process} directory.
+     *
+     * @param workspaceDir the workspace, project or {@code process} directory to scan
+     * @return the sorted list of matching item paths
+     * @throws IOException if an I/O error occurs while walking the directory
+     */
+    public static List<Path> findProcessItems(Path workspaceDir) throws IOException {
+        if (!Files.isDirectory(workspaceDir)) {
+            throw new IllegalArgumentException("Path does not exist or is not a directory: "
+                + workspaceDir.toAbsolutePath());
+        }
+
+        return RunMetrics.time(RunMetrics.Phase.WALK, () -> {
+            try (Stream<Path> allFiles = Files.walk(workspaceDir.toAbsolutePath().normalize())) {
+                return allFiles
+                    .filter(path -> path.getFileName().toString().endsWith(".item"))
+                    .filter(BatchRunner::isUnderProcessDirectory)
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .collect(Collectors.toList());
+            }
+        });
+    }
+
+    /**
+     * Expands item arguments given on the command line. Every argument is either
+     * <ul>
+     *     <li>an {@code .item} file,</li>
+     *     <li>a glob such as {@code workspace/P/routes/**.item}, matched against absolute paths, or</li>
+     *     <li>a list file with one item or glob per line; blank lines and lines starting with {@code #} are
+     *     ignored, and relative entries are resolved against the directory of the list file.</li>
+     * </ul>
+     *
+     * @param arguments the item arguments
+     * @return the distinct items, as absolute normalized paths, in argument order
+     * @throws IOException if a list file or a directory cannot be read
+     */
+    public static List<Path> findItems(List<String> arguments) throws IOException {
+        Set<Path> items = new LinkedHashSet<>();
+        for (String argument : arguments) {
+            addItems(Paths.get("").toAbsolutePath(), argument, true, items);
+        }
+        return new ArrayList<>(items);
+    }
+
+    private static void addItems(Path baseDir, String argument, boolean listFileAllowed, Set<Path> items)
+        throws IOException {
+        int globStart = indexOfGlobCharacter(argument);
+        if (globStart < 0) {
+            Path path = baseDir.resolve(argument).toAbsolutePath().normalize();
+            if (listFileAllowed && Files.isRegularFile(path) && !path.getFileName().toString().endsWith(".item")) {
+                for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                    String entry = line.trim();
+                    if (!entry.isEmpty() && !entry.startsWith("#")) {
+                        addItems(path.getParent(), entry, false, items);
+                    }
+                }
+            } else if (Files.isRegularFile(path)) {
+                items.add(path);
+            } else {
+                throw new IllegalArgumentException("Path does not exist or is not a file: " + path);
+            }
+            return;
+        }
+
+        // Walk from the deepest directory that does not contain a glob character
+        int separator = Math.max(argument.lastIndexOf('/', globStart), argument.lastIndexOf('\\', globStart));
+        Path walkRoot = baseDir.resolve(separator < 0 ? "" : argument.substring(0, separator + 1))
+            .toAbsolutePath().normalize();
+        String pattern = baseDir.resolve(argument.substring(0, separator + 1)).toAbsolutePath().normalize()
+            + "/" + argument.substring(separator + 1);
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        if (!Files.isDirectory(walkRoot)) {
+            return;
+        }
+        RunMetrics.time(RunMetrics.Phase.WALK, () -> {
+            try (Stream<Path> allFiles = Files.walk(walkRoot)) {
+                allFiles
+                    .filter(matcher::matches)
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .forEach(items::add);
+            }
+        });
+    }
+
+    private static int indexOfGlobCharacter(String argument) {
+        for (int i = 0; i < argument.length(); i++) {
+            if ("*?[{".indexOf(argument.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static boolean isUnderProcessDirectory(Path path) {
+        for (Path segment : path.getParent()) {
+            if ("process".equals(segment.toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Processes the given items in parallel and prints a per-file summary.
+     *
+     * @param items the item files to process
+     * @param task  the work to execute for each item
+     * @return the outcome of every item, in the order of {@code items}
+     */
+    public static List<ItemResult> run(List<Path> items, ItemTask task) {
+        return run(items, task, RunJournal.disabled());
+    }
+
+    /**
+     * Processes the given items in parallel, records every succeeded item in the journal and prints a per-file
+     * summary. Items completed by the interrupted run a resumed journal belongs to are skipped.
+     *
+     * @param items   the item files to process
+     * @param task    the work to execute for each item
+     * @param journal the journal of the run
+     * @return the outcome of every processed item, in the order of {@code items}
+     */
+    public static List<ItemResult> run(List<Path> items, ItemTask task, RunJournal journal) {
+        List<Path> remainingItems = items.stream()
+            .filter(item -> !journal.isCompleted(item))
+            .collect(Collectors.toList());
+        if (remainingItems.size() < items.size()) {
+            System.out.println("Skipping " + (items.size() - remainingItems.size()) +
+                " item(s) completed by the interrupted run.");
+            items = remainingItems;
+        }
+
+        int threads = Math.max(1, Math.min(items.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<ItemResult> results = new ArrayList<>(items.size());
+
+        try {
+            List<Future<ItemResult>> futures = new ArrayList<>(items.size());
+            for (Path item : items) {
+                futures.add(executor.submit(() -> processItem(item.toString(), itemPath -> {
+                    task.process(itemPath);
+                    journal.complete(itemPath);
+                })));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                results.add(awaitResult(items.get(i).toString(), futures.get(i)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        printSummary(results);
+        return results;
+    }
+
+    /**
+     * Computes a value for each of the given items in parallel, without printing anything. The function has to
+     * handle the failures of single items itself.
+     *
+     * @param items    the item files
+     * @param function computes the value of an item
+     * @param <T>      the type of the values
+     * @return the values, in the order of {@code items}
+     */
+    public static <T> List<T> collect(List<Path> items, Function<Path, T> function) {
+        int threads = Math.max(1, Math.min(items.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<T> values = new ArrayList<>(items.size());
+
+        try {
+            List<Future<T>> futures = new ArrayList<>(items.size());
+            for (Path item : items) {
+                futures.add(executor.submit(() -> function.apply(item)));
+            }
+            for (Future<T> future : futures) {
+                values.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return values;
+    }
+
+    private static ItemResult processItem(String itemPath, ItemTask task) {
+        long start = System.nanoTime();
+        Throwable error = null;
+        try {
+            RunMetrics.measureItem(itemPath, task);
+        } catch (Exception | Error e) {
+            error = e;
+        }
+        return new ItemResult(itemPath, error, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private static ItemResult awaitResult(String itemPath, Future<ItemResult> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            return new ItemResult(itemPath, e.getCause(), 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ItemResult(itemPath, e, 0);
+        }
+    }
+
+    private static void printSummary(List<ItemResult> results) {
+        long failed = results.stream().filter(result -> !result.isSuccess()).count();
+
+        System.out.println();
+        System.out.println("Summary:");
+        for (ItemResult result : results) {
+            if (result.isSuccess()) {
+                System.out.println("  OK     " + result.getItemPath() + " (" + result.getElapsedMillis() + " ms)");
+            } else {
+                System.out.println("  FAILED " + result.getItemPath() + ": " + result.getError());
+            }
+        }
+        System.out.println("Processed " + results.size() + " item(s): " + (results.size() - failed) +
+            " succeeded, " + failed + " failed.");
+    }
+}
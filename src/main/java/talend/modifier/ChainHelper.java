@@ -15,25 +15,45 @@ public class ChainHelper {
      * <p>
      * This method assumes that the graph represents a directed sequence of Talend components
      * connected one after another (e.g., via OnComponentOk). It traverses the graph by always
-     * taking the last listed connection from each node until no further nodes are found.
+     * taking the last listed connection from each node until no further nodes are found, or until
+     * the connection would lead back to a node of the chain (see {@link ConnectionGraph#findLastNodeInChain(String)}).
+     *
+     * @param start the name of the starting component node
+     * @param graph the component connection graph
+     * @return the name of the last node in the chain starting from {@code start}
+     */
+    public static String findLastNodeInChain(String start, ConnectionGraph graph) {
+        return graph.findLastNodeInChain(start);
+    }
+
+    /**
+     * Map-based variant of {@link #findLastNodeInChain(String, ConnectionGraph)}.
      *
      * @param start the name of the starting component node
      * @param graph a directed graph where keys are component names and values are lists of connected components
      * @return the name of the last node in the chain starting from {@code start}
      */
     public static String findLastNodeInChain(String start, Map<String, List<String>> graph) {
-        String current = start;
-        while (graph.containsKey(current) && !graph.get(current).isEmpty()) {
-            current = graph.get(current).get(graph.get(current).size() - 1);
-        }
-        return current;
+        return findLastNodeInChain(start, ConnectionGraph.of(graph));
     }
 
     /**
      * Determines if a target node is reachable from a start node in the component connection graph.
      * <p>
-     * This method performs a depth-first search (DFS) to check whether there is a path from {@code start}
-     * to {@code target}. It prevents revisiting nodes by tracking them in a visited set.
+     * The nodes reachable from {@code start} are computed once per graph, so repeated queries from the
+     * same node only cost a bit lookup.
+     *
+     * @param start  the name of the starting component node
+     * @param target the name of the target component node to find
+     * @param graph  the component connection graph
+     * @return {@code true} if {@code target} is reachable from {@code start}, otherwise {@code false}
+     */
+    public static boolean isNodeReachable(String start, String target, ConnectionGraph graph) {
+        return graph.isReachable(start, target);
+    }
+
+    /**
+     * Map-based variant of {@link #isNodeReachable(String, String, ConnectionGraph)}.
      *
      * @param start  the name of the starting component node
      * @param target the name of the target component node to find
@@ -41,20 +61,6 @@ public class ChainHelper {
      * @return {@code true} if {@code target} is reachable from {@code start}, otherwise {@code false}
      */
     public static boolean isNodeReachable(String start, String target, Map<String, List<String>> graph) {
-        Set<String> visited = new HashSet<>();
-        Deque<String> stack = new ArrayDeque<>();
-        stack.push(start);
-
-        while (!stack.isEmpty()) {
-            String current = stack.pop();
-            if (!visited.add(current)) continue;
-
-            if (target.equals(current)) return true;
-
-            for (String neighbor : graph.getOrDefault(current, Collections.emptyList())) {
-                stack.push(neighbor);
-            }
-        }
-        return false;
+        return isNodeReachable(start, target, ConnectionGraph.of(graph));
     }
 }
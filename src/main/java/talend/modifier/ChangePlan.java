@@ -0,0 +1,571 @@
+package talend.modifier;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serializable description of the changes an injection makes to the items of a workspace.
+ * <p>
+ * Planning loads every item, decides which components, connections and parameters have to be added or
+ * updated, and records these decisions as {@link Action actions} without writing anything. Applying a plan
+ * replays the recorded actions on the items without analyzing them again; an item that has changed since
+ * it was planned is rejected. Only items with at least one action are part of the plan, together with the items
+ * that could not be planned; applying the plan fails for these.
+ * <p>
+ * Plans are stored as UTF-8 text: a header, the mode and injected snippet of the plan, followed by one
+ * {@code I} line per item (content hash and path) and one {@code A} line per action of that item, and one
+ * {@code F} line per item that could not be planned (path and error). An action argument equal to the snippet is
+ * stored as {@code ${snippet}}, like in the rule files, so the snippet is only stored once.
+ */
+public class ChangePlan {
+
+    private static final String PLAN_HEADER = "# talendJobModifier change plan v2";
+    private static final String SNIPPET_REFERENCE = "${" + InjectionRules.SNIPPET + "}";
+
+    private final String mode;
+    private final String snippet;
+    private final Map<String, ItemPlan> items = new ConcurrentHashMap<>();
+    private final Map<String, String> failedItems = new ConcurrentHashMap<>();
+
+    /**
+     * Computes the plan of a single item.
+     */
+    @FunctionalInterface
+    public interface ItemPlanner {
+        ItemPlan plan(String itemPath) throws Exception;
+    }
+
+    /**
+     * A single change to an item. The arguments are resolved during planning, so applying an action
+     * requires no further analysis of the item.
+     */
+    public static class Action {
+
+        public enum Type {
+            /**
+             * Arguments: component name, unique name and the component specific values. Components without a
+             * dedicated builder are created from the {@link ComponentTemplates component template} of the
+             * same name; their values are {@code key=value} pairs and the unique name is passed as {@code name}.
+             */
+            ADD_COMPONENT,
+            /**
+             * Arguments: connection kind ({@code ON_COMPONENT_OK}, {@code FLOW} or {@code TRACED_FLOW}),
+             * unique name or label, source, target and, for traced flows, the trace column.
+             */
+            ADD_CONNECTION,
+            /**
+             * Arguments: output flow, HTTP verb, URI pattern, consumed and produced content type.
+             */
+            ADD_OUTPUT_FLOW,
+            /**
+             * Arguments: component name, unique name, parameter name and the new value.
+             */
+            UPDATE_PARAMETER
+        }
+
+        private final Type type;
+        private final List<String> arguments;
+
+        private Action(Type type, String... arguments) {
+            this.type = type;
+            this.arguments = List.of(arguments);
+        }
+
+        public static Action addComponent(String componentName, String uniqueName, String... values) {
+            String[] arguments = new String[values.length + 2];
+            arguments[0] = componentName;
+            arguments[1] = uniqueName;
+            System.arraycopy(values, 0, arguments, 2, values.length);
+            return new Action(Type.ADD_COMPONENT, arguments);
+        }
+
+        /**
+         * Creates an action from its type and raw arguments, e.g. as declared in a rule file.
+         *
+         * @param type      the type of the action
+         * @param arguments the arguments, as documented for the type
+         * @return the action
+         */
+        public static Action of(Type type, List<String> arguments) {
+            return new Action(type, arguments.toArray(new String[0]));
+        }
+
+        public static Action addOnComponentOkConnection(String name, String source, String target) {
+            return new Action(Type.ADD_CONNECTION, "ON_COMPONENT_OK", name, source, target);
+        }
+
+        public static Action addFlowConnection(String label, String source, String target) {
+            return new Action(Type.ADD_CONNECTION, "FLOW", label, source, target);
+        }
+
+        public static Action addTracedFlowConnection(String source, String target, String traceColumn) {
+            return new Action(Type.ADD_CONNECTION, "TRACED_FLOW", source + "_" + target, source, target,
+                traceColumn);
+        }
+
+        public static Action addOutputFlow(String outputFlow, String verb, String pattern,
+                                           String consumes, String produces) {
+            return new Action(Type.ADD_OUTPUT_FLOW, outputFlow, verb, pattern, consumes, produces);
+        }
+
+        public static Action updateParameter(String componentName, String uniqueName,
+                                             String paramName, String value) {
+            return new Action(Type.UPDATE_PARAMETER, componentName, uniqueName, paramName, value);
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public List<String> getArguments() {
+            return arguments;
+        }
+
+        /**
+         * Performs the action on the model of an item.
+         *
+         * @param model the model of the item
+         * @return this action, for recording it after it has been performed
+         */
+        public Action applyTo(ProcessModel model) {
+            Document doc = model.getDocument();
+            switch (type) {
+                case ADD_COMPONENT:
+                    model.appendNode(createComponent(doc));
+                    break;
+                case ADD_CONNECTION:
+                    model.appendConnection(createConnection(model));
+                    break;
+                case ADD_OUTPUT_FLOW:
+                    TalendComponentsHelper.addOutputFlowToTRestRequestIfItsNotExisted(model, arguments.get(0),
+                        arguments.get(1), arguments.get(2), arguments.get(3), arguments.get(4));
+                    break;
+                case UPDATE_PARAMETER:
+                    TalendComponentsHelper.updateParameterValue(model, arguments.get(0), arguments.get(1),
+                        arguments.get(2), arguments.get(3));
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported action: " + type);
+            }
+            return this;
+        }
+
+        private Element createComponent(Document doc) {
+            String componentName = arguments.get(0);
+            switch (componentName) {
+                case "tPrejob":
+                    return TalendComponentsHelper.getNewTPreJobComponent(doc);
+                case "tJava":
+                    return TalendComponentsHelper.getNewTJavaComponent(doc, arguments.get(1), arguments.get(2));
+                case "tJavaRow":
+                    return TalendComponentsHelper.getNewTJavaRowComponent(doc, arguments.get(1), arguments.get(2));
+                case "tRESTResponse":
+                    return TalendComponentsHelper.getNewTRestResponseComponent(doc, arguments.get(1),
+                        arguments.get(2), arguments.get(3));
+                default:
+                    return createComponentFromTemplate(doc, componentName);
+            }
+        }
+
+        private Element createComponentFromTemplate(Document doc, String componentName) {
+            Map<String, String> values = new HashMap<>();
+            values.put("name", arguments.get(1));
+            for (String value : arguments.subList(2, arguments.size())) {
+                int separator = value.indexOf('=');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Expected key=value for component " + componentName +
+                        ": " + value);
+                }
+                values.put(value.substring(0, separator), value.substring(separator + 1));
+            }
+            return ComponentTemplates.create(doc, componentName, values);
+        }
+
+        private Element createConnection(ProcessModel model) {
+            String kind = arguments.get(0);
+            switch (kind) {
+                case "ON_COMPONENT_OK":
+                    return TalendComponentsHelper.getNewOnComponentOkConnectionComponent(model.getDocument(),
+                        arguments.get(1), arguments.get(2), arguments.get(3));
+                case "FLOW":
+                    return TalendComponentsHelper.getNewMainConnectionComponentWithoutSchema(model.getDocument(),
+                        arguments.get(2), arguments.get(3), arguments.get(1));
+                case "TRACED_FLOW":
+                    return TalendComponentsHelper.getNewMainConnectionComponentWithSingleSchemaColumn(model,
+                        arguments.get(2), arguments.get(3), arguments.get(4));
+                default:
+                    throw new IllegalArgumentException("Unsupported connection: " + kind);
+            }
+        }
+
+        @Override
+        public String toString() {
+            switch (type) {
+                case ADD_COMPONENT:
+                    return "add component " + arguments.get(0) + " " + arguments.get(1);
+                case ADD_CONNECTION:
+                    return "add connection " + arguments.get(1) + ": " + arguments.get(2) + " -> " + arguments.get(3);
+                case ADD_OUTPUT_FLOW:
+                    return "add output flow " + arguments.get(0) + " to tRESTRequest";
+                case UPDATE_PARAMETER:
+                    return "update parameter " + arguments.get(2) + " of " + arguments.get(1);
+                default:
+                    return type.toString();
+            }
+        }
+    }
+
+    /**
+     * The actions planned for a single item, together with the hash of the content they were planned for.
+     */
+    public static class ItemPlan {
+        private final String itemPath;
+        private final String contentHash;
+        private final List<Action> actions;
+
+        public ItemPlan(String itemPath, String contentHash, List<Action> actions) {
+            this.itemPath = itemPath;
+            this.contentHash = contentHash;
+            this.actions = List.copyOf(actions);
+        }
+
+        /**
+         * @param itemPath the item that needs no changes
+         * @return an empty plan for the item
+         */
+        public static ItemPlan unchanged(String itemPath) {
+            return new ItemPlan(itemPath, "", Collections.emptyList());
+        }
+
+        public String getItemPath() {
+            return itemPath;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        public List<Action> getActions() {
+            return actions;
+        }
+
+        public boolean isEmpty() {
+            return actions.isEmpty();
+        }
+    }
+
+    public ChangePlan(String mode, String snippet) {
+        this.mode = mode;
+        this.snippet = snippet;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public String getSnippet() {
+        return snippet;
+    }
+
+    /**
+     * @return the plans of all items with at least one action, sorted by path
+     */
+    public List<ItemPlan> getItems() {
+        List<ItemPlan> sortedItems = new ArrayList<>(items.values());
+        sortedItems.sort(Comparator.comparing(ItemPlan::getItemPath));
+        return sortedItems;
+    }
+
+    /**
+     * Adds the plan of an item; empty plans are ignored. Safe to call from several threads.
+     *
+     * @param itemPlan the plan of the item
+     */
+    public void add(ItemPlan itemPlan) {
+        if (!itemPlan.isEmpty()) {
+            items.put(itemPlan.getItemPath(), itemPlan);
+        }
+    }
+
+    /**
+     * Records an item that could not be planned. Safe to call from several threads.
+     *
+     * @param itemPath the item
+     * @param error    why the item could not be planned
+     */
+    public void addFailure(String itemPath, String error) {
+        failedItems.put(itemPath, error);
+    }
+
+    /**
+     * @return the errors of the items that could not be planned, by path, sorted by path
+     */
+    public Map<String, String> getFailedItems() {
+        return new TreeMap<>(failedItems);
+    }
+
+    /**
+     * Plans the given items in parallel. Nothing is written.
+     *
+     * @param itemPaths the items to plan
+     * @param mode      the injection mode, e.g. {@link RunManifest#MODE_LOGGER}
+     * @param snippet   the code injected by the mode
+     * @param planner   computes the plan of a single item
+     * @return the plan of all items needing changes and of all items that could not be planned
+     */
+    public static ChangePlan create(List<Path> itemPaths, String mode, String snippet, ItemPlanner planner) {
+        ChangePlan plan = new ChangePlan(mode, snippet);
+        // Collected rather than run, so planning does not print a line per item
+        BatchRunner.collect(itemPaths, itemPath -> {
+            try {
+                RunMetrics.measureItem(itemPath.toString(), path -> plan.add(planner.plan(path)));
+                return true;
+            } catch (Exception e) {
+                plan.addFailure(itemPath.toString(), String.valueOf(e));
+                return false;
+            }
+        });
+        return plan;
+    }
+
+    /**
+     * Applies the plan to all of its items in parallel. The items that could not be planned fail.
+     *
+     * @return the outcome of every item
+     */
+    public List<BatchRunner.ItemResult> apply() {
+        return apply(RunJournal.disabled());
+    }
+
+    /**
+     * Applies the plan to all of its items in parallel, skipping the items the journal reports as completed.
+     *
+     * @param journal the journal of the run
+     * @return the outcome of every applied item
+     */
+    public List<BatchRunner.ItemResult> apply(RunJournal journal) {
+        Map<Path, ItemPlan> itemsByPath = new LinkedHashMap<>();
+        for (ItemPlan itemPlan : getItems()) {
+            itemsByPath.put(Paths.get(itemPlan.getItemPath()), itemPlan);
+        }
+        List<Path> itemPaths = new ArrayList<>(itemsByPath.keySet());
+        failedItems.keySet().stream().sorted().map(Paths::get).forEach(itemPaths::add);
+        return BatchRunner.run(itemPaths, itemPath -> {
+            ItemPlan itemPlan = itemsByPath.get(Paths.get(itemPath));
+            if (itemPlan == null) {
+                throw new IllegalStateException("Item could not be planned: " + failedItems.get(itemPath));
+            }
+            applyItem(itemPlan);
+        }, journal);
+    }
+
+    private void applyItem(ItemPlan itemPlan) throws Exception {
+        String itemPath = itemPlan.getItemPath();
+        ItemCatalog.Entry entry = ItemCatalog.getDefault().get(Paths.get(itemPath));
+        if (!itemPlan.getContentHash().equals(entry.getContentHash())) {
+            throw new IllegalStateException("Item has changed since the plan was created: " + itemPath);
+        }
+
+        String contentHash = applyActions(Paths.get(itemPath), entry.getSummary(), itemPlan.getActions())
+            .orElse(itemPlan.getContentHash());
+        RunManifest.getDefault().record(itemPath, mode, snippet, contentHash);
+        System.out.println("Applied " + itemPlan.getActions().size() + " change(s) to: " + itemPath);
+    }
+
+    /**
+     * Performs actions on an item and saves it. Items the {@link StreamingItemInjector} is preferred for are
+     * rewritten in a streaming pass, all others are loaded as a document.
+     *
+     * @param itemPath the item
+     * @param summary  the summary of the item the actions were decided on
+     * @param actions  the actions, in order
+     * @return the content hash of the written item (see {@link RunManifest#hash(byte[])}), or an empty Optional if
+     * nothing changed
+     * @throws Exception if the item cannot be read, changed or written
+     */
+    static Optional<String> applyActions(Path itemPath, ItemSummary summary, List<Action> actions) throws Exception {
+        if (StreamingItemInjector.isPreferredFor(itemPath)) {
+            return StreamingItemInjector.applyActions(itemPath, summary, actions);
+        }
+
+        Document doc = FileHelper.loadDocument(itemPath.toString());
+        doc.getDocumentElement().normalize();
+        ProcessModel model = ProcessModel.of(doc);
+        RunMetrics.time(RunMetrics.Phase.MUTATE, () -> actions.forEach(action -> action.applyTo(model)));
+        return SpliceWriter.save(model, itemPath.toString());
+    }
+
+    /**
+     * Prints the planned actions of every item.
+     */
+    public void print() {
+        List<ItemPlan> sortedItems = getItems();
+        System.out.println();
+        System.out.println("Plan (" + mode + "):");
+        for (ItemPlan itemPlan : sortedItems) {
+            System.out.println("  " + itemPlan.getItemPath());
+            for (Action action : itemPlan.getActions()) {
+                System.out.println("    " + action);
+            }
+        }
+        getFailedItems().forEach((itemPath, error) -> System.out.println("  FAILED " + itemPath + ": " + error));
+        System.out.println(sortedItems.size() + " item(s) to change, " +
+            sortedItems.stream().mapToInt(itemPlan -> itemPlan.getActions().size()).sum() + " action(s), " +
+            failedItems.size() + " item(s) failed.");
+    }
+
+    /**
+     * Writes the plan to a file, replacing it atomically.
+     *
+     * @param file the plan file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        FileHelper.writeAtomically(file, tempFile -> {
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                writer.write(PLAN_HEADER);
+                writer.newLine();
+                writer.write("M " + escape(mode));
+                writer.newLine();
+                writer.write("S " + escape(snippet));
+                writer.newLine();
+                for (ItemPlan itemPlan : getItems()) {
+                    writer.write("I " + itemPlan.getContentHash() + "\t" + escape(itemPlan.getItemPath()));
+                    writer.newLine();
+                    for (Action action : itemPlan.getActions()) {
+                        StringBuilder line = new StringBuilder("A ").append(action.getType());
+                        for (String argument : action.getArguments()) {
+                            line.append('\t').append(escapeArgument(argument));
+                        }
+                        writer.write(line.toString());
+                        writer.newLine();
+                    }
+                }
+                for (Map.Entry<String, String> failedItem : getFailedItems().entrySet()) {
+                    writer.write("F " + escape(failedItem.getKey()) + "\t" + escape(failedItem.getValue()));
+                    writer.newLine();
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads a plan written by {@link #save(Path)}.
+     *
+     * @param file the plan file
+     * @return the plan
+     * @throws IOException if the file cannot be read or is not a valid plan
+     */
+    public static ChangePlan load(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!PLAN_HEADER.equals(reader.readLine())) {
+                throw new IOException("Not a change plan: " + file);
+            }
+            String modeLine = reader.readLine();
+            String snippetLine = reader.readLine();
+            if (modeLine == null || !modeLine.startsWith("M ")
+                || snippetLine == null || !snippetLine.startsWith("S ")) {
+                throw new IOException("Invalid change plan header: " + file);
+            }
+            ChangePlan plan = new ChangePlan(unescape(modeLine.substring(2)), unescape(snippetLine.substring(2)));
+
+            String itemPath = null;
+            String contentHash = null;
+            List<Action> actions = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("I ")) {
+                    if (itemPath != null) {
+                        plan.add(new ItemPlan(itemPath, contentHash, actions));
+                    }
+                    String[] fields = line.substring(2).split("\t", 2);
+                    if (fields.length != 2) {
+                        throw new IOException("Invalid item line in " + file + ": " + line);
+                    }
+                    contentHash = fields[0];
+                    itemPath = unescape(fields[1]);
+                    actions = new ArrayList<>();
+                } else if (line.startsWith("A ") && itemPath != null) {
+                    String[] fields = line.substring(2).split("\t", -1);
+                    String[] arguments = new String[fields.length - 1];
+                    for (int i = 1; i < fields.length; i++) {
+                        arguments[i - 1] = SNIPPET_REFERENCE.equals(fields[i]) ? plan.snippet : unescape(fields[i]);
+                    }
+                    try {
+                        actions.add(new Action(Action.Type.valueOf(fields[0]), arguments));
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException("Invalid action line in " + file + ": " + line, e);
+                    }
+                } else if (line.startsWith("F ")) {
+                    String[] fields = line.substring(2).split("\t", 2);
+                    if (fields.length != 2) {
+                        throw new IOException("Invalid failure line in " + file + ": " + line);
+                    }
+                    plan.addFailure(unescape(fields[0]), unescape(fields[1]));
+                } else if (!line.isEmpty()) {
+                    throw new IOException("Invalid line in " + file + ": " + line);
+                }
+            }
+            if (itemPath != null) {
+                plan.add(new ItemPlan(itemPath, contentHash, actions));
+            }
+            return plan;
+        }
+    }
+
+    /**
+     * Escapes an action argument, replacing the snippet by a reference to the {@code S} line. An argument that
+     * happens to read like the reference is escaped so it is not expanded on load.
+     */
+    private String escapeArgument(String argument) {
+        if (argument.equals(snippet)) {
+            return SNIPPET_REFERENCE;
+        }
+        String escaped = escape(argument);
+        return SNIPPET_REFERENCE.equals(escaped) ? "\\" + escaped : escaped;
+    }
+
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 16);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': escaped.append("\\\\"); break;
+                case '\t': escaped.append("\\t"); break;
+                case '\n': escaped.append("\\n"); break;
+                case '\r': escaped.append("\\r"); break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String unescape(String value) {
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\' || i + 1 == value.length()) {
+                unescaped.append(c);
+                continue;
+            }
+            char next = value.charAt(++i);
+            switch (next) {
+                case 't': unescaped.append('\t'); break;
+                case 'n': unescaped.append('\n'); break;
+                case 'r': unescaped.append('\r'); break;
+                default: unescaped.append(next);
+            }
+        }
+        return unescaped.toString();
+    }
+}
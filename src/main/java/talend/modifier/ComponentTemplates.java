@@ -0,0 +1,146 @@
+package talend.modifier;
+
+import org.w3c.dom.*;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates components and connections from XML templates.
+ * <p>
+ * A template is an XML fragment with a single root element, e.g. {@code templates/tJava.xml} next to this class.
+ * Attribute values may contain placeholders such as {@code ${name}}, which are replaced by the values passed to
+ * {@link #create(Document, String, Map)}; the rest of the fragment is copied as is. Whitespace between elements
+ * and comments are dropped, so templates can be formatted freely.
+ * <p>
+ * Each template is parsed once and kept for the lifetime of the JVM; an element is then produced by importing
+ * the parsed fragment into the target document and filling in its placeholders. A directory set with the
+ * {@code modifier.templates.dir} system property is searched before the built-in templates, so a component type
+ * can be added or adjusted by dropping a {@code <name>.xml} file there.
+ */
+public class ComponentTemplates {
+
+    private static final String RESOURCE_DIRECTORY = "templates/";
+    private static final String PLACEHOLDER_START = "${";
+    private static final String PLACEHOLDER_END = "}";
+
+    private static final Map<String, Element> TEMPLATES = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an element from a template.
+     *
+     * @param doc          the document the element is created for; it is not appended anywhere
+     * @param templateName the name of the template, without {@code .xml}
+     * @param values       the values of the placeholders, by placeholder name
+     * @return the new element
+     * @throws IllegalArgumentException if the template does not exist or is invalid, or a placeholder has no value
+     */
+    public static Element create(Document doc, String templateName, Map<String, String> values) {
+        Element template = TEMPLATES.computeIfAbsent(templateName, ComponentTemplates::load);
+        Element element;
+        // Reading a DOM is not guaranteed to be thread-safe, and the templates are shared between batch threads
+        synchronized (template) {
+            element = (Element) doc.importNode(template, true);
+        }
+        substitute(element, templateName, values);
+        return element;
+    }
+
+    private static Element load(String templateName) {
+        Path file = findTemplateFile(templateName);
+        String location = file != null ? file.toString() : RESOURCE_DIRECTORY + templateName + ".xml";
+        try (InputStream in = file != null
+            ? new BufferedInputStream(Files.newInputStream(file))
+            : ComponentTemplates.class.getResourceAsStream(RESOURCE_DIRECTORY + templateName + ".xml")) {
+            if (in == null) {
+                throw new IllegalArgumentException("Unknown component template: " + templateName);
+            }
+
+            Element template = FileHelper.parseDocument(in, location).getDocumentElement();
+            removeFormatting(template);
+            return template;
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid component template " + location + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static Path findTemplateFile(String templateName) {
+        String directory = System.getProperty("modifier.templates.dir");
+        if (directory == null) {
+            return null;
+        }
+        Path file = Paths.get(directory, templateName + ".xml");
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    private static void removeFormatting(Node parent) {
+        Node child = parent.getFirstChild();
+        while (child != null) {
+            Node next = child.getNextSibling();
+            if (child.getNodeType() == Node.COMMENT_NODE ||
+                (child.getNodeType() == Node.TEXT_NODE && child.getNodeValue().isBlank())) {
+                parent.removeChild(child);
+            } else if (child.getNodeType() == Node.ELEMENT_NODE) {
+                removeFormatting(child);
+            }
+            child = next;
+        }
+    }
+
+    private static void substitute(Element element, String templateName, Map<String, String> values) {
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attribute = (Attr) attributes.item(i);
+            String value = attribute.getValue();
+            if (value.contains(PLACEHOLDER_START)) {
+                attribute.setValue(fillPlaceholders(value, values, "component template " + templateName));
+            }
+        }
+
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                substitute((Element) child, templateName, values);
+            }
+        }
+    }
+
+    /**
+     * Replaces the {@code ${name}} placeholders of a value.
+     *
+     * @param value   the value containing placeholders
+     * @param values  the values of the placeholders, by placeholder name
+     * @param context what the value belongs to, for the error message
+     * @return the value with all placeholders replaced
+     * @throws IllegalArgumentException if a placeholder has no value
+     */
+    static String fillPlaceholders(String value, Map<String, String> values, String context) {
+        if (!value.contains(PLACEHOLDER_START)) {
+            return value;
+        }
+        StringBuilder result = new StringBuilder(value.length() + 32);
+        int position = 0;
+        int start;
+        while ((start = value.indexOf(PLACEHOLDER_START, position)) >= 0) {
+            int end = value.indexOf(PLACEHOLDER_END, start);
+            if (end < 0) {
+                break;
+            }
+
+            String name = value.substring(start + PLACEHOLDER_START.length(), end);
+            String replacement = values.get(name);
+            if (replacement == null) {
+                throw new IllegalArgumentException("No value for placeholder " + name + " of " + context);
+            }
+            result.append(value, position, start).append(replacement);
+            position = end + PLACEHOLDER_END.length();
+        }
+        return result.append(value, position, value.length()).toString();
+    }
+}
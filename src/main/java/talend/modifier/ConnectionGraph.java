@@ -0,0 +1,203 @@
+package talend.modifier;
+
+import org.w3c.dom.Element;
+
+import java.util.*;
+
+/**
+ * Compact directed graph of the connections between the components of an item.
+ * <p>
+ * Component names are interned to consecutive int ids, and the adjacency is stored in compressed sparse
+ * row form: the targets of component {@code i} are {@code targets[offsets[i]]} to
+ * {@code targets[offsets[i + 1] - 1]}, in the order the connections were added. Traversals use int stacks and
+ * {@link BitSet}s, so queries on jobs with thousands of components do not box anything. The set of components
+ * reachable from a start component is computed once and reused by later queries on the same graph.
+ * <p>
+ * The graph is immutable apart from the memoized reachability, and is not thread-safe.
+ */
+public final class ConnectionGraph {
+
+    private final String[] names;
+    private final Map<String, Integer> ids;
+    private final int[] offsets;
+    private final int[] targets;
+    private final BitSet[] reachable;
+
+    private ConnectionGraph(String[] names, Map<String, Integer> ids, int[] offsets, int[] targets) {
+        this.names = names;
+        this.ids = ids;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.reachable = new BitSet[names.length];
+    }
+
+    /**
+     * Collects connections and builds the graph.
+     */
+    public static final class Builder {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private int[] edgeSources = new int[16];
+        private int[] edgeTargets = new int[16];
+        private int edgeCount;
+
+        /**
+         * Adds a connection from {@code source} to {@code target}.
+         *
+         * @param source the UNIQUE_NAME of the source component
+         * @param target the UNIQUE_NAME of the target component
+         * @return this builder
+         */
+        public Builder addConnection(String source, String target) {
+            if (edgeCount == edgeSources.length) {
+                edgeSources = Arrays.copyOf(edgeSources, edgeCount * 2);
+                edgeTargets = Arrays.copyOf(edgeTargets, edgeCount * 2);
+            }
+            edgeSources[edgeCount] = intern(source);
+            edgeTargets[edgeCount] = intern(target);
+            edgeCount++;
+            return this;
+        }
+
+        public ConnectionGraph build() {
+            int nodeCount = names.size();
+            int[] offsets = new int[nodeCount + 1];
+            for (int i = 0; i < edgeCount; i++) {
+                offsets[edgeSources[i] + 1]++;
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+
+            // Stable counting sort by source, keeping the order in which the connections were added
+            int[] next = Arrays.copyOf(offsets, nodeCount);
+            int[] targets = new int[edgeCount];
+            for (int i = 0; i < edgeCount; i++) {
+                targets[next[edgeSources[i]]++] = edgeTargets[i];
+            }
+            return new ConnectionGraph(names.toArray(new String[0]), ids, offsets, targets);
+        }
+
+        private int intern(String name) {
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = names.size();
+                ids.put(name, id);
+                names.add(name);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Builds the graph of the given connection elements.
+     *
+     * @param connections the {@code connection} elements of an item
+     * @return the graph from their {@code source} to their {@code target} components
+     */
+    public static ConnectionGraph of(List<Element> connections) {
+        Builder builder = new Builder();
+        for (Element connection : connections) {
+            builder.addConnection(connection.getAttribute("source"), connection.getAttribute("target"));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds the graph of an adjacency map.
+     *
+     * @param graph a directed graph where keys are component names and values are lists of connected components
+     * @return the equivalent compact graph
+     */
+    public static ConnectionGraph of(Map<String, List<String>> graph) {
+        Builder builder = new Builder();
+        for (Map.Entry<String, List<String>> entry : graph.entrySet()) {
+            for (String target : entry.getValue()) {
+                builder.addConnection(entry.getKey(), target);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the number of distinct components appearing in the connections
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Determines if a target component is reachable from a start component. A component is always reachable
+     * from itself.
+     *
+     * @param start  the name of the starting component
+     * @param target the name of the target component
+     * @return {@code true} if there is a path from {@code start} to {@code target}
+     */
+    public boolean isReachable(String start, String target) {
+        if (start.equals(target)) {
+            return true;
+        }
+        Integer startId = ids.get(start);
+        Integer targetId = ids.get(target);
+        return startId != null && targetId != null && reachableFrom(startId).get(targetId);
+    }
+
+    /**
+     * Finds the last component of the chain starting at the given component, by always following the last
+     * connection added for each component.
+     * <p>
+     * If the chain runs into a cycle, the search stops at the component whose connection leads back into the
+     * chain, so the result is the last component reached before any component would be visited twice.
+     *
+     * @param start the name of the starting component
+     * @return the name of the last component of the chain, or {@code start} if it has no connections
+     */
+    public String findLastNodeInChain(String start) {
+        Integer startId = ids.get(start);
+        if (startId == null) {
+            return start;
+        }
+        BitSet visited = new BitSet(names.length);
+        int current = startId;
+        visited.set(current);
+        while (offsets[current + 1] > offsets[current]) {
+            int next = targets[offsets[current + 1] - 1];
+            if (visited.get(next)) {
+                break;
+            }
+            visited.set(next);
+            current = next;
+        }
+        return names[current];
+    }
+
+    private BitSet reachableFrom(int start) {
+        BitSet visited = reachable[start];
+        if (visited != null) {
+            return visited;
+        }
+        visited = new BitSet(names.length);
+        int[] stack = new int[names.length];
+        int size = 0;
+        stack[size++] = start;
+        visited.set(start);
+        while (size > 0) {
+            int current = stack[--size];
+            for (int i = offsets[current]; i < offsets[current + 1]; i++) {
+                int target = targets[i];
+                if (!visited.get(target)) {
+                    BitSet known = reachable[target];
+                    if (known != null) {
+                        visited.or(known);
+                    } else {
+                        visited.set(target);
+                        stack[size++] = target;
+                    }
+                }
+            }
+        }
+        reachable[start] = visited;
+        return visited;
+    }
+}
@@ -0,0 +1,74 @@
+package talend.modifier;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Long-running mode executing one command per line of input in the same JVM.
+ * <p>
+ * A client starts {@code --daemon} once and writes the usual command lines to its standard input, e.g.
+ * {@code --log-item "/path/with spaces/job_0.1.item"} (arguments are separated by whitespace, double quotes
+ * group an argument). The output of the command is written to standard output as usual, followed by a line
+ * {@code @exit <status>} with the exit status the command would have had as a separate process. An empty
+ * line is ignored; {@code quit} or the end of the input stops the daemon.
+ * <p>
+ * Between commands the JVM stays warm and keeps its caches: the workspace indexes, the cTalendJob references of
+ * routes, the tRunJob children of jobs and the run manifest. Before each command the workspace indexes are
+ * revalidated against the modification times of their directories, so items added or removed in between are
+ * seen; the other caches validate every entry against the size and modification time of its item.
+ */
+public class Daemon {
+
+    public static final String STATUS_PREFIX = "@exit ";
+
+    /**
+     * Serves commands until the input ends or {@code quit} is received.
+     *
+     * @param in  the command lines
+     * @param out the stream the status lines are written to
+     */
+    public static void serve(InputStream in, PrintStream out) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if ("quit".equals(line)) {
+                    break;
+                }
+
+                out.println(STATUS_PREFIX + execute(line));
+                out.flush();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static int execute(String line) {
+        List<String> args;
+        try {
+            args = ArgumentHelper.splitArguments(line);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return Main.EXIT_USAGE;
+        }
+        if ("--daemon".equals(args.get(0))) {
+            System.out.println("The daemon is already running.");
+            return Main.EXIT_USAGE;
+        }
+
+        if (WorkspaceIndex.dropOutdated()) {
+            LatestVersionResolver.clearCache();
+        }
+        RunMetrics.reset();
+        return Main.run(args.toArray(new String[0]));
+    }
+}
@@ -1,21 +1,52 @@
 package talend.modifier;
 
 import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
 
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import java.io.File;
+import java.io.*;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Predicate;
 
 public class FileHelper {
 
+    /*
+     * Factory lookup is expensive and factories are thread-safe to use, so they are created once. Builders
+     * and transformers are not thread-safe; every thread gets its own instance which is reused for all items
+     * that thread processes.
+     */
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = createDocumentBuilderFactory();
+    private static final TransformerFactory TRANSFORMER_FACTORY = createTransformerFactory();
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER =
+        ThreadLocal.withInitial(FileHelper::createDocumentBuilder);
+    private static final ThreadLocal<Transformer> TRANSFORMER =
+        ThreadLocal.withInitial(FileHelper::createTransformer);
+
+    private static final int COMPARE_BUFFER_SIZE = 64 * 1024;
+
     public static Optional<File> findFileInDirectory(File dir, String targetName) {
         return getFilesMatching(dir, file -> file.getName().equals(targetName))
             .stream()
@@ -60,16 +91,271 @@ public class FileHelper {
         return Optional.empty();
     }
 
-    public static void saveDocument(Document doc, String filePath) throws Exception {
-        Transformer transformer = TransformerFactory.newInstance().newTransformer();
-        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-        DOMSource source = new DOMSource(doc);
-        StreamResult result = new StreamResult(new File(filePath));
-        transformer.transform(source, result);
+    /**
+     * Serializes the document to the given file. The file is only written when the serialized bytes differ
+     * from its current content, so unchanged items keep their modification time, and is replaced atomically.
+     *
+     * @param doc      the document to save
+     * @param filePath the target file
+     * @return the content hash of the written file (see {@link RunManifest#hash(byte[])}), or an empty Optional if
+     * the file already had the same content
+     * @throws Exception if the document cannot be serialized or written
+     */
+    public static Optional<String> saveDocument(Document doc, String filePath) throws Exception {
+        try (RunMetrics.Timer timer = RunMetrics.time(RunMetrics.Phase.SERIALIZE)) {
+            Transformer transformer = TRANSFORMER.get();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+            transformer.transform(new DOMSource(doc), new StreamResult(out));
+
+            Path target = Paths.get(filePath);
+            byte[] content = out.toByteArray();
+            if (hasContent(target, content)) {
+                return Optional.empty();
+            }
+            writeAtomically(target, tempFile -> Files.write(tempFile, content));
+            timer.written(content.length);
+            return Optional.of(RunManifest.hash(content));
+        }
+    }
+
+    /**
+     * Writes the content of a file, see {@link #writeAtomically(Path, ContentWriter)}.
+     */
+    @FunctionalInterface
+    public interface ContentWriter<E extends Exception> {
+        void write(Path tempFile) throws IOException, E;
+    }
+
+    /**
+     * Replaces a file atomically: the content is written to a temporary file next to it, which is then moved over
+     * the file, so an interrupted run never leaves a half-written file. Missing parent directories are created.
+     *
+     * @param target the file to write
+     * @param writer writes the new content to the temporary file it is given
+     * @throws IOException if the file cannot be written
+     * @throws E           if the writer fails
+     */
+    public static <E extends Exception> void writeAtomically(Path target, ContentWriter<E> writer)
+        throws IOException, E {
+        replaceAtomically(target, writer, false);
+    }
+
+    /**
+     * Replaces a file atomically like {@link #writeAtomically(Path, ContentWriter)}, unless the written content
+     * turns out to be the current content of the file, which then keeps its modification time.
+     *
+     * @param target the file to write
+     * @param writer writes the new content to the temporary file it is given
+     * @return {@code true} if the file was replaced, {@code false} if it already had the written content
+     * @throws IOException if the file cannot be written
+     * @throws E           if the writer fails
+     */
+    public static <E extends Exception> boolean writeAtomicallyIfChanged(Path target, ContentWriter<E> writer)
+        throws IOException, E {
+        return replaceAtomically(target, writer, true);
+    }
+
+    private static <E extends Exception> boolean replaceAtomically(Path target, ContentWriter<E> writer,
+                                                                   boolean onlyIfChanged) throws IOException, E {
+        Path dir = target.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tempFile = createTempFile(dir, target.getFileName().toString());
+        try {
+            writer.write(tempFile);
+            if (onlyIfChanged && haveSameContent(tempFile, target)) {
+                return false;
+            }
+            copyPermissions(target, tempFile);
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } finally {
+            Files.deleteIfExists(tempFile);
+            WorkspaceIndex.recordReplacement(target);
+        }
+    }
+
+    /**
+     * Creates an empty temporary file. Unlike {@link Files#createTempFile}, which makes the file readable by its
+     * owner only, the file gets the default permissions of a new file, as the file it replaces would have had.
+     */
+    private static Path createTempFile(Path dir, String prefix) throws IOException {
+        while (true) {
+            try {
+                String suffix = Long.toUnsignedString(ThreadLocalRandom.current().nextLong());
+                return Files.createFile(dir.resolve(prefix + "." + suffix + ".tmp"));
+            } catch (FileAlreadyExistsException e) {
+                // Try another name.
+            }
+        }
+    }
+
+    /**
+     * Gives the replacement of an existing file the permissions of that file, where the file system has them.
+     */
+    private static void copyPermissions(Path file, Path replacement) throws IOException {
+        if (Files.exists(file) && Files.getFileStore(file).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            Files.setPosixFilePermissions(replacement, Files.getPosixFilePermissions(file));
+        }
+    }
+
+    /**
+     * Compares the content of a file with the given bytes without loading the whole file.
+     *
+     * @param file    the file to compare
+     * @param content the expected content
+     * @return {@code true} if the file exists and contains exactly {@code content}
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean hasContent(Path file, byte[] content) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) != content.length) {
+            return false;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[COMPARE_BUFFER_SIZE];
+            int offset = 0;
+            int read;
+            while ((read = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+                if (!Arrays.equals(buffer, 0, read, content, offset, offset + read)) {
+                    return false;
+                }
+                offset += read;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares the content of two files.
+     *
+     * @param file1 the first file
+     * @param file2 the second file
+     * @return {@code true} if both files exist and have the same content
+     * @throws IOException if one of the files cannot be read
+     */
+    public static boolean haveSameContent(Path file1, Path file2) throws IOException {
+        if (!Files.isRegularFile(file1) || !Files.isRegularFile(file2) || Files.size(file1) != Files.size(file2)) {
+            return false;
+        }
+        try (InputStream in1 = Files.newInputStream(file1);
+             InputStream in2 = Files.newInputStream(file2)) {
+            byte[] buffer1 = new byte[COMPARE_BUFFER_SIZE];
+            byte[] buffer2 = new byte[COMPARE_BUFFER_SIZE];
+            int read1;
+            while ((read1 = in1.readNBytes(buffer1, 0, buffer1.length)) > 0) {
+                int read2 = in2.readNBytes(buffer2, 0, read1);
+                if (read1 != read2 || !Arrays.equals(buffer1, 0, read1, buffer2, 0, read2)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the directory for the caches of the modifier (workspace indexes, run manifests).
+     * Defaults to {@code talendJobModifier} in the temporary directory and can be set with the
+     * {@code modifier.cache.dir} system property.
+     *
+     * @return the cache directory; it may not exist yet
+     */
+    public static Path getCacheDirectory() {
+        return Paths.get(System.getProperty("modifier.cache.dir",
+            Paths.get(System.getProperty("java.io.tmpdir"), "talendJobModifier").toString()));
     }
 
     public static Document loadDocument(String jobPath) throws Exception {
-        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(jobPath));
+        try (RunMetrics.Timer timer = RunMetrics.time(RunMetrics.Phase.PARSE);
+             InputStream in = new BufferedInputStream(Files.newInputStream(Paths.get(jobPath)))) {
+            timer.read(Files.size(Paths.get(jobPath)));
+            return parseDocument(in, new File(jobPath).toURI().toString());
+        }
+    }
+
+    /**
+     * Parses a document with the reusable builder of the current thread.
+     *
+     * @param in       the content of the document
+     * @param systemId the location of the document, used in error messages
+     * @return the parsed document
+     * @throws Exception if the content cannot be read or is not well-formed
+     */
+    public static Document parseDocument(InputStream in, String systemId) throws Exception {
+        DocumentBuilder builder = DOCUMENT_BUILDER.get();
+        builder.reset();
+        InputSource source = new InputSource(in);
+        source.setSystemId(systemId);
+        return builder.parse(source);
+    }
+
+    /**
+     * Creates an empty document with the reusable builder of the current thread.
+     *
+     * @return a new empty document
+     */
+    public static Document newDocument() {
+        DocumentBuilder builder = DOCUMENT_BUILDER.get();
+        builder.reset();
+        return builder.newDocument();
+    }
+
+    /**
+     * Creates a StAX reader over an item, for passes that only need to look at the item rather than load it.
+     *
+     * @param in the content of the item
+     * @return a reader with DTDs and external entities disabled
+     * @throws XMLStreamException if the reader cannot be created
+     */
+    public static XMLStreamReader createStreamReader(InputStream in) throws XMLStreamException {
+        return INPUT_FACTORY.createXMLStreamReader(in);
+    }
+
+    private static DocumentBuilderFactory createDocumentBuilderFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setValidating(false);
+        factory.setXIncludeAware(false);
+        factory.setExpandEntityReferences(false);
+        try {
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("XML parser does not support the required features", e);
+        }
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        return factory;
+    }
+
+    private static TransformerFactory createTransformerFactory() {
+        TransformerFactory factory = TransformerFactory.newInstance();
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+        return factory;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private static DocumentBuilder createDocumentBuilder() {
+        try {
+            return DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Unable to create XML parser", e);
+        }
+    }
+
+    private static Transformer createTransformer() {
+        try {
+            Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+            return transformer;
+        } catch (TransformerConfigurationException e) {
+            throw new IllegalStateException("Unable to create XML serializer", e);
+        }
     }
 
 }
@@ -0,0 +1,470 @@
+package talend.modifier;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An injection declared as rules, each made of conditions on an item and the actions performed when all
+ * conditions hold.
+ * <p>
+ * Rule files are UTF-8 text with one statement per line; arguments are separated by whitespace, double quotes
+ * group an argument and lines starting with {@code #} are comments:
+ * <pre>
+ * require &lt;condition&gt; [| &lt;condition&gt; ...] [else &lt;message&gt;]
+ * let &lt;name&gt; = component &lt;componentName&gt; [else &lt;default&gt;]
+ * let &lt;name&gt; = chain-end &lt;uniqueName&gt;
+ * let &lt;name&gt; = file &lt;path&gt;
+ * when &lt;condition&gt; [| &lt;condition&gt; ...]
+ * do &lt;actionType&gt; &lt;argument&gt; ...
+ * </pre>
+ * The rules only apply to an item if all {@code require} statements hold. A {@code let} statement defines a
+ * variable: the UNIQUE_NAME of the first node of a component type, the last node of the chain starting at a
+ * node, or the content of a file next to the rule file. A rule is a group of {@code when} statements, which
+ * all have to hold, followed by the {@code do} statements of its {@link ChangePlan.Action actions}; {@code |}
+ * separates alternatives of which one has to hold. A condition is one of {@code component <componentName>},
+ * {@code node <uniqueName>}, {@code connection <label>}, {@code output-flow <flow>} (of the tRESTRequest),
+ * {@code parameter <componentName> <uniqueName> <parameter> <value>} or {@code path <from> <to>}, optionally
+ * negated with {@code no}. Every argument may contain {@code ${name}} placeholders of variables, including
+ * those passed by the caller such as {@code ${snippet}}.
+ * <p>
+ * All requirements, variables and conditions are evaluated against the {@link ItemSummary} of the item, read in
+ * a single streaming pass, and against its connection graph; only then are the actions of the matching rules
+ * performed, in the order of the file, on the {@link ProcessModel} of the item. Additional rules therefore cost
+ * lookups, not scans of the document, no condition depends on an earlier action, and an item is only loaded as
+ * a document if a rule matches.
+ */
+public class InjectionRules {
+
+    public static final String SNIPPET = "snippet";
+    public static final String STATUS = "status";
+    public static final String LOGGER = "logger";
+
+    private static final String BUILT_IN_DIRECTORY = "rules/";
+    private static final String RULES_EXTENSION = ".rules";
+    private static final Map<String, InjectionRules> BUILT_IN = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final StringBuilder source = new StringBuilder();
+    private String fingerprint;
+    private final List<Requirement> requirements = new ArrayList<>();
+    private final List<Binding> bindings = new ArrayList<>();
+    private final List<Rule> rules = new ArrayList<>();
+
+    private interface Condition {
+        boolean test(Facts facts);
+    }
+
+    private interface Binding {
+        void bind(Facts facts);
+    }
+
+    private static class Requirement {
+        private final List<Condition> alternatives;
+        private final String message;
+
+        Requirement(List<Condition> alternatives, String message) {
+            this.alternatives = alternatives;
+            this.message = message;
+        }
+    }
+
+    private static class Rule {
+        private final List<List<Condition>> conditions = new ArrayList<>();
+        private final List<ChangePlan.Action> actions = new ArrayList<>();
+    }
+
+    /**
+     * The facts of the item under evaluation and the variables defined so far.
+     */
+    private class Facts {
+        private final ItemSummary summary;
+        private final Map<String, String> variables;
+        private ConnectionGraph connectionGraph;
+
+        Facts(ItemSummary summary, Map<String, String> variables) {
+            this.summary = summary;
+            this.variables = new HashMap<>(variables);
+        }
+
+        String resolve(String value) {
+            return ComponentTemplates.fillPlaceholders(value, variables, "rule set " + name);
+        }
+
+        ConnectionGraph getConnectionGraph() {
+            if (connectionGraph == null) {
+                connectionGraph = summary.getConnectionGraph();
+            }
+            return connectionGraph;
+        }
+    }
+
+    /**
+     * The outcome of evaluating the rules against an item.
+     */
+    public static class Evaluation {
+        private final String unmetRequirement;
+        private final List<ChangePlan.Action> actions;
+
+        private Evaluation(String unmetRequirement, List<ChangePlan.Action> actions) {
+            this.unmetRequirement = unmetRequirement;
+            this.actions = actions;
+        }
+
+        /**
+         * @return the message of the first requirement the item does not meet; empty if the rules apply
+         */
+        public Optional<String> getUnmetRequirement() {
+            return Optional.ofNullable(unmetRequirement);
+        }
+
+        /**
+         * @return the actions of all matching rules, with their arguments resolved, in order
+         */
+        public List<ChangePlan.Action> getActions() {
+            return actions;
+        }
+
+        /**
+         * Performs the actions on the model of the item the rules were evaluated against.
+         *
+         * @return the performed actions, in order
+         */
+        public List<ChangePlan.Action> applyTo(ProcessModel model) {
+            for (ChangePlan.Action action : actions) {
+                action.applyTo(model);
+            }
+            return actions;
+        }
+
+        /**
+         * Performs the actions on the item the rules were evaluated against and saves it, see
+         * {@link ChangePlan#applyActions(Path, ItemSummary, List)}.
+         *
+         * @param itemPath the item
+         * @param summary  the summary the rules were evaluated against
+         * @return the content hash of the written item (see {@link RunManifest#hash(byte[])}), or an empty Optional
+         * if nothing changed
+         * @throws Exception if the item cannot be read, changed or written
+         */
+        public Optional<String> applyTo(Path itemPath, ItemSummary summary) throws Exception {
+            return ChangePlan.applyActions(itemPath, summary, actions);
+        }
+    }
+
+    private InjectionRules(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns one of the rule sets shipped with the modifier, e.g. {@link #STATUS} or {@link #LOGGER}.
+     *
+     * @param name the name of the rule set
+     * @return the rule set, parsed on first use
+     * @throws IllegalArgumentException if there is no such rule set
+     */
+    public static InjectionRules builtIn(String name) {
+        return BUILT_IN.computeIfAbsent(name, key -> {
+            InputStream in = InjectionRules.class.getResourceAsStream(BUILT_IN_DIRECTORY + key + RULES_EXTENSION);
+            if (in == null) {
+                throw new IllegalArgumentException("Unknown rule set: " + key);
+            }
+            try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                return parse(key, reader, null);
+            } catch (IOException e) {
+                throw new IllegalStateException("Invalid built-in rule set: " + key, e);
+            }
+        });
+    }
+
+    /**
+     * Reads a rule file.
+     *
+     * @param file the rule file; files used by {@code let ... = file} are resolved against its directory
+     * @return the rule set, named after the file
+     * @throws IOException if the file cannot be read or is not a valid rule file
+     */
+    public static InjectionRules load(Path file) throws IOException {
+        String fileName = file.getFileName().toString();
+        String name = fileName.endsWith(RULES_EXTENSION)
+            ? fileName.substring(0, fileName.length() - RULES_EXTENSION.length())
+            : fileName;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parse(name, reader, file.toAbsolutePath().getParent());
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the mode under which items processed with these rules are recorded in the run manifest
+     */
+    public String getManifestMode() {
+        return "rules:" + name;
+    }
+
+    /**
+     * Evaluates all rules against an item without changing it.
+     *
+     * @param summary   the summary of the item
+     * @param variables the variables provided by the caller, e.g. {@link #SNIPPET}
+     * @return the unmet requirement or the actions of the matching rules
+     */
+    public Evaluation evaluate(ItemSummary summary, Map<String, String> variables) {
+        Facts facts = new Facts(summary, variables);
+        for (Requirement requirement : requirements) {
+            if (!anyHolds(requirement.alternatives, facts)) {
+                return new Evaluation(facts.resolve(requirement.message), Collections.emptyList());
+            }
+        }
+        for (Binding binding : bindings) {
+            binding.bind(facts);
+        }
+
+        List<ChangePlan.Action> actions = new ArrayList<>();
+        for (Rule rule : rules) {
+            if (rule.conditions.stream().allMatch(alternatives -> anyHolds(alternatives, facts))) {
+                for (ChangePlan.Action action : rule.actions) {
+                    List<String> arguments = new ArrayList<>(action.getArguments().size());
+                    for (String argument : action.getArguments()) {
+                        arguments.add(facts.resolve(argument));
+                    }
+                    actions.add(ChangePlan.Action.of(action.getType(), arguments));
+                }
+            }
+        }
+        return new Evaluation(null, actions);
+    }
+
+    /**
+     * Applies the rules to a single item and saves it if any action was performed.
+     *
+     * @param itemPath the item to process
+     * @throws Exception if the item cannot be read, changed or written
+     */
+    public void processItemFile(String itemPath) throws Exception {
+        RunManifest manifest = RunManifest.getDefault();
+        if (manifest.isUpToDate(itemPath, getManifestMode(), fingerprint)) {
+            System.out.println("Unchanged since last run, skipped: " + itemPath);
+            return;
+        }
+
+        ItemCatalog.Entry entry = ItemCatalog.getDefault().get(Paths.get(itemPath));
+        Evaluation evaluation = evaluate(entry.getSummary(), Collections.emptyMap());
+        String contentHash = entry.getContentHash();
+        if (evaluation.getUnmetRequirement().isPresent()) {
+            System.out.println(evaluation.getUnmetRequirement().get() + ": " + itemPath);
+        } else if (evaluation.getActions().isEmpty()) {
+            System.out.println("No rule matches, skipped: " + itemPath);
+        } else {
+            System.out.println("Processing file: " + itemPath);
+            contentHash = evaluation.applyTo(Paths.get(itemPath), entry.getSummary()).orElse(contentHash);
+            for (ChangePlan.Action action : evaluation.getActions()) {
+                System.out.println(action);
+            }
+        }
+        manifest.record(itemPath, getManifestMode(), fingerprint, contentHash);
+    }
+
+    private static boolean anyHolds(List<Condition> alternatives, Facts facts) {
+        for (Condition condition : alternatives) {
+            if (condition.test(facts)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static InjectionRules parse(String name, Reader in, Path baseDirectory) throws IOException {
+        InjectionRules ruleSet = new InjectionRules(name);
+        BufferedReader reader = new BufferedReader(in);
+        Rule rule = null;
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            ruleSet.source.append(line).append('\n');
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            try {
+                List<String> tokens = ArgumentHelper.splitArguments(line);
+                List<String> arguments = tokens.subList(1, tokens.size());
+                switch (tokens.get(0)) {
+                    case "require":
+                        ruleSet.requirements.add(parseRequirement(arguments, line));
+                        break;
+                    case "let":
+                        ruleSet.bindings.add(ruleSet.parseBinding(arguments, baseDirectory));
+                        break;
+                    case "when":
+                        if (rule == null || !rule.actions.isEmpty()) {
+                            rule = new Rule();
+                            ruleSet.rules.add(rule);
+                        }
+                        rule.conditions.add(parseAlternatives(arguments));
+                        break;
+                    case "do":
+                        if (rule == null) {
+                            rule = new Rule();
+                            ruleSet.rules.add(rule);
+                        }
+                        if (arguments.isEmpty()) {
+                            throw new IllegalArgumentException("Missing action");
+                        }
+                        rule.actions.add(ChangePlan.Action.of(ChangePlan.Action.Type.valueOf(arguments.get(0)),
+                            arguments.subList(1, arguments.size())));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown statement: " + tokens.get(0));
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid rule in " + name + " at line " + lineNumber + ": " + e.getMessage(),
+                    e);
+            }
+        }
+
+        if (rule != null && rule.actions.isEmpty()) {
+            throw new IOException("Invalid rule in " + name + ": the last rule has no action");
+        }
+        ruleSet.fingerprint = ruleSet.source.toString();
+        return ruleSet;
+    }
+
+    private static Requirement parseRequirement(List<String> arguments, String line) {
+        int elseIndex = arguments.indexOf("else");
+        if (elseIndex < 0) {
+            return new Requirement(parseAlternatives(arguments), "Requirement not met: " + line);
+        }
+        if (elseIndex != arguments.size() - 2) {
+            throw new IllegalArgumentException("Expected a single message after 'else'");
+        }
+        return new Requirement(parseAlternatives(arguments.subList(0, elseIndex)), arguments.get(elseIndex + 1));
+    }
+
+    private Binding parseBinding(List<String> arguments, Path baseDirectory) {
+        if (arguments.size() < 4 || !"=".equals(arguments.get(1))) {
+            throw new IllegalArgumentException("Expected: let <name> = <kind> <argument>");
+        }
+        String variable = arguments.get(0);
+        String kind = arguments.get(2);
+        String argument = arguments.get(3);
+
+        switch (kind) {
+            case "component": {
+                String defaultValue = parseDefault(arguments.subList(4, arguments.size()));
+                return facts -> {
+                    String componentName = facts.resolve(argument);
+                    Optional<String> uniqueName = facts.summary.getUniqueComponentName(componentName);
+                    if (uniqueName.isEmpty() && defaultValue == null) {
+                        throw new IllegalStateException("No " + componentName + " component for variable " +
+                            variable + " of rule set " + name);
+                    }
+                    facts.variables.put(variable, uniqueName.orElseGet(() -> facts.resolve(defaultValue)));
+                };
+            }
+            case "chain-end":
+                expectCount(arguments, 4, "let");
+                return facts -> facts.variables.put(variable,
+                    facts.getConnectionGraph().findLastNodeInChain(facts.resolve(argument)));
+            case "file": {
+                expectCount(arguments, 4, "let");
+                if (baseDirectory == null) {
+                    throw new IllegalArgumentException("File variables are only supported in rule files");
+                }
+                String content;
+                try {
+                    content = Files.readString(baseDirectory.resolve(argument), StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Unable to read " + argument + ": " + e.getMessage(), e);
+                }
+                source.append(content).append('\n');
+                return facts -> facts.variables.put(variable, content);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown variable kind: " + kind);
+        }
+    }
+
+    private static String parseDefault(List<String> arguments) {
+        if (arguments.isEmpty()) {
+            return null;
+        }
+        if (arguments.size() != 2 || !"else".equals(arguments.get(0))) {
+            throw new IllegalArgumentException("Expected: else <default>");
+        }
+        return arguments.get(1);
+    }
+
+    private static List<Condition> parseAlternatives(List<String> arguments) {
+        List<Condition> alternatives = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= arguments.size(); i++) {
+            if (i == arguments.size() || "|".equals(arguments.get(i))) {
+                alternatives.add(parseCondition(arguments.subList(start, i)));
+                start = i + 1;
+            }
+        }
+        return alternatives;
+    }
+
+    private static Condition parseCondition(List<String> tokens) {
+        boolean negated = !tokens.isEmpty() && "no".equals(tokens.get(0));
+        List<String> arguments = negated ? tokens.subList(1, tokens.size()) : tokens;
+        if (arguments.isEmpty()) {
+            throw new IllegalArgumentException("Missing condition");
+        }
+
+        Condition condition;
+        switch (arguments.get(0)) {
+            case "component":
+                expectCount(arguments, 2, arguments.get(0));
+                condition = facts -> facts.summary.hasComponent(facts.resolve(arguments.get(1)));
+                break;
+            case "node":
+                expectCount(arguments, 2, arguments.get(0));
+                condition = facts -> facts.summary.hasNodeWithUniqueName(facts.resolve(arguments.get(1)));
+                break;
+            case "connection":
+                expectCount(arguments, 2, arguments.get(0));
+                condition = facts -> facts.summary.hasConnection(facts.resolve(arguments.get(1)));
+                break;
+            case "output-flow":
+                expectCount(arguments, 2, arguments.get(0));
+                condition = facts -> facts.summary.hasTRestRequestOutputFlow(facts.resolve(arguments.get(1)));
+                break;
+            case "parameter":
+                expectCount(arguments, 5, arguments.get(0));
+                condition = facts -> facts.summary.hasParameterValue(facts.resolve(arguments.get(1)),
+                    facts.resolve(arguments.get(2)), facts.resolve(arguments.get(3)), facts.resolve(arguments.get(4)));
+                break;
+            case "path":
+                expectCount(arguments, 3, arguments.get(0));
+                condition = facts -> facts.getConnectionGraph().isReachable(facts.resolve(arguments.get(1)),
+                    facts.resolve(arguments.get(2)));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown condition: " + arguments.get(0));
+        }
+        return negated ? facts -> !condition.test(facts) : condition;
+    }
+
+    private static void expectCount(List<String> arguments, int count, String statement) {
+        if (arguments.size() != count) {
+            throw new IllegalArgumentException("Expected " + count + " argument(s) for " + statement + ", got " +
+                arguments.size());
+        }
+    }
+}
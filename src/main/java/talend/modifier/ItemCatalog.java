@@ -0,0 +1,504 @@
+package talend.modifier;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent catalog of the {@link ItemSummary summaries} of items, shared by all runs.
+ * <p>
+ * For every item the catalog records the size, modification time and content hash the item had when its
+ * summary was read. A summary is reused as long as the size and modification time are unchanged; when only
+ * the modification time differs, the content hash decides, like in the {@link RunManifest}. Changed and new
+ * items are read once and their records appended to the catalog when the run ends, so a run only pays for the
+ * items changed since the last one.
+ * <p>
+ * The catalog file is read in one piece and indexed by path when it is first used; a summary is only decoded
+ * when it is asked for. Each record keeps the strings of its summary in a table referenced by index, so parameter
+ * names repeated by every component are stored once per item. Records superseded by later ones stay in the file
+ * until they outweigh the current ones, then the catalog is rewritten without them and without the records of
+ * deleted items. Every record carries a CRC-32, so a damaged record is ignored rather than decoded into wrong
+ * facts, and processes sharing the catalog serialize their saves with a lock file next to it.
+ * <p>
+ * The catalog is stored in the {@linkplain FileHelper#getCacheDirectory() cache directory} unless the
+ * {@code modifier.catalog} system property names another file. Setting it to {@code false} disables it.
+ */
+public class ItemCatalog {
+
+    private static final byte[] CATALOG_HEADER = "# talendJobModifier item catalog v3\n"
+        .getBytes(StandardCharsets.US_ASCII);
+    private static final int RECORD_PREFIX_BYTES = 2 * Integer.BYTES;
+    private static volatile ItemCatalog defaultCatalog;
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Entry> pending = new ConcurrentHashMap<>();
+    private final Map<String, Integer> recordLengths = new HashMap<>();
+    private long validLength;
+    private Object fileKey;
+    private long deadBytes;
+
+    /**
+     * The catalog record of an item.
+     */
+    public static final class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String contentHash;
+        private final ByteBuffer record;
+        private volatile ItemSummary summary;
+
+        private Entry(long size, long lastModified, String contentHash, ByteBuffer record, ItemSummary summary) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+            this.record = record;
+            this.summary = summary;
+        }
+
+        /**
+         * @return the SHA-256 hash of the item, as lower-case hex string
+         */
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        /**
+         * @return the summary of the item, decoded from the catalog on first use
+         */
+        public ItemSummary getSummary() {
+            if (summary == null) {
+                summary = decodeSummary(record.duplicate());
+            }
+            return summary;
+        }
+
+        private Entry withLastModified(long newLastModified) {
+            return new Entry(size, newLastModified, contentHash, record, summary);
+        }
+    }
+
+    private ItemCatalog(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the catalog of this run, loading it on first use.
+     *
+     * @return the catalog; a disabled catalog reads every item and records nothing
+     */
+    public static ItemCatalog getDefault() {
+        if (defaultCatalog == null) {
+            synchronized (ItemCatalog.class) {
+                if (defaultCatalog == null) {
+                    String location = System.getProperty("modifier.catalog");
+                    if ("false".equalsIgnoreCase(location)) {
+                        defaultCatalog = new ItemCatalog(null);
+                    } else {
+                        defaultCatalog = load(location == null
+                            ? FileHelper.getCacheDirectory().resolve("catalog.bin")
+                            : Paths.get(location));
+                    }
+                }
+            }
+        }
+        return defaultCatalog;
+    }
+
+    /**
+     * Returns the summary of an item, from the catalog if the item is unchanged.
+     *
+     * @param itemPath the item
+     * @return the current summary of the item
+     * @throws IOException if the item cannot be read or is not well-formed
+     */
+    public ItemSummary getSummary(Path itemPath) throws IOException {
+        return get(itemPath).getSummary();
+    }
+
+    /**
+     * Returns the record of an item, from the catalog if the item is unchanged. Otherwise the item is read, and
+     * its new record is stored by the next {@link #save()}.
+     *
+     * @param itemPath the item
+     * @return the record of the current content of the item
+     * @throws IOException if the item cannot be read or is not well-formed
+     */
+    public Entry get(Path itemPath) throws IOException {
+        Path item = itemPath.toAbsolutePath().normalize();
+        String key = item.toString();
+        long size;
+        long lastModified;
+        Entry entry;
+
+        try (RunMetrics.Timer timer = RunMetrics.time(RunMetrics.Phase.CHECK)) {
+            size = Files.size(item);
+            lastModified = Files.getLastModifiedTime(item).toMillis();
+            entry = entries.get(key);
+            if (entry != null && entry.size == size) {
+                if (entry.lastModified == lastModified) {
+                    return entry;
+                }
+                timer.read(size);
+                if (entry.contentHash.equals(RunManifest.hashFile(item))) {
+                    return store(key, entry.withLastModified(lastModified));
+                }
+            }
+        }
+
+        // The content hash is computed while the summary is read, so the item is read only once
+        ItemSummary summary;
+        String contentHash;
+        try (DigestInputStream in = new DigestInputStream(new BufferedInputStream(Files.newInputStream(item)),
+            RunManifest.newDigest())) {
+            // The StAX reader closes its input at the end of the document, before the digest has seen all of it
+            summary = ItemSummary.read(new FilterInputStream(in) {
+                @Override
+                public void close() {
+                }
+            }, item);
+            in.transferTo(OutputStream.nullOutputStream());
+            contentHash = RunManifest.toHex(in.getMessageDigest().digest());
+        }
+        return store(key, new Entry(size, lastModified, contentHash, null, summary));
+    }
+
+    private Entry store(String key, Entry entry) {
+        if (file != null) {
+            entries.put(key, entry);
+            pending.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Appends the records of the items read since the catalog was loaded or last saved, and compacts the catalog
+     * once superseded records outweigh the current ones.
+     * <p>
+     * Other processes may share the catalog, e.g. a daemon and a command line run. Saving holds the exclusive
+     * lock of the catalog; if another process has appended to or compacted the catalog since this one read it,
+     * the catalog is indexed again first, so the records of both are kept.
+     */
+    public synchronized void save() {
+        if (file == null || pending.isEmpty()) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try (FileChannel lockChannel = openLockChannel(file)) {
+                lockChannel.lock();
+                Map<String, Entry> written = new TreeMap<>(pending);
+                append(written);
+                written.forEach(pending::remove);
+                if (deadBytes > validLength - deadBytes) {
+                    compact();
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Unable to store item catalog " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void append(Map<String, Entry> written) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            if (channel.size() != validLength || !Objects.equals(fileKey, fileKey(file))) {
+                index(channel);
+                entries.putAll(pending);
+            }
+
+            // Only the remains of a save interrupted while holding the lock can follow the last valid record;
+            // dropping them keeps the new records reachable
+            channel.truncate(validLength);
+            channel.position(validLength);
+            if (validLength == 0) {
+                channel.write(ByteBuffer.wrap(CATALOG_HEADER));
+            }
+            for (Map.Entry<String, Entry> entry : written.entrySet()) {
+                byte[] record = encodeRecord(entry.getKey(), entry.getValue());
+                channel.write(ByteBuffer.wrap(record));
+                addRecord(entry.getKey(), record.length);
+            }
+            validLength = channel.position();
+        }
+    }
+
+    private void compact() throws IOException {
+        Map<String, Integer> compactedLengths = new HashMap<>();
+        FileHelper.writeAtomically(file, tempFile -> {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+                out.write(CATALOG_HEADER);
+                for (Map.Entry<String, Entry> entry : new TreeMap<>(entries).entrySet()) {
+                    if (Files.isRegularFile(Paths.get(entry.getKey()))) {
+                        byte[] record = encodeRecord(entry.getKey(), entry.getValue());
+                        out.write(record);
+                        compactedLengths.put(entry.getKey(), record.length);
+                    } else {
+                        entries.remove(entry.getKey());
+                    }
+                }
+            }
+        });
+        recordLengths.clear();
+        recordLengths.putAll(compactedLengths);
+        validLength = Files.size(file);
+        fileKey = fileKey(file);
+        deadBytes = 0;
+    }
+
+    private void addRecord(String key, int length) {
+        Integer previous = recordLengths.put(key, length);
+        if (previous != null) {
+            deadBytes += previous;
+        }
+    }
+
+    private static ItemCatalog load(Path file) {
+        ItemCatalog catalog = new ItemCatalog(file);
+        if (!Files.isRegularFile(file)) {
+            return catalog;
+        }
+
+        try (FileChannel lockChannel = openLockChannel(file)) {
+            lockChannel.lock(0, Long.MAX_VALUE, true);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                catalog.index(channel);
+            }
+        } catch (IOException | RuntimeException e) {
+            catalog.entries.clear();
+            catalog.recordLengths.clear();
+            catalog.validLength = 0;
+            catalog.deadBytes = 0;
+        }
+        return catalog;
+    }
+
+    /**
+     * The lock of a catalog is held on a file next to it, which, unlike the catalog, is never replaced. Closing
+     * the channel releases the lock.
+     */
+    private static FileChannel openLockChannel(Path file) throws IOException {
+        Path lockFile = file.toAbsolutePath().resolveSibling(file.getFileName() + ".lock");
+        Files.createDirectories(lockFile.getParent());
+        return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    }
+
+    private static Object fileKey(Path file) throws IOException {
+        return Files.isRegularFile(file) ? Files.readAttributes(file, BasicFileAttributes.class).fileKey() : null;
+    }
+
+    /**
+     * Reads the catalog and indexes its records by path. Reading stops at a record whose length is out of bounds;
+     * a record whose checksum does not match is skipped.
+     */
+    private void index(FileChannel channel) throws IOException {
+        entries.clear();
+        recordLengths.clear();
+        validLength = 0;
+        deadBytes = 0;
+        fileKey = fileKey(file);
+
+        // Read rather than mapped: the records outlive the channel, and a mapping would pin the file that a
+        // compaction replaces and fault if another process truncated it
+        ByteBuffer content = ByteBuffer.allocate(Math.toIntExact(channel.size()));
+        while (content.hasRemaining() && channel.read(content, content.position()) >= 0) {
+            // Keep reading until the buffer is full or the end of the file
+        }
+        content.flip();
+        if (content.limit() < CATALOG_HEADER.length ||
+            !content.slice().limit(CATALOG_HEADER.length).equals(ByteBuffer.wrap(CATALOG_HEADER))) {
+            return;
+        }
+
+        CRC32 checksum = new CRC32();
+        int position = CATALOG_HEADER.length;
+        while (position + RECORD_PREFIX_BYTES <= content.limit()) {
+            int length = content.getInt(position);
+            int start = position + RECORD_PREFIX_BYTES;
+            if (length <= 0 || length > content.limit() - start) {
+                // A record cut short by an interrupted save
+                break;
+            }
+
+            ByteBuffer record = content.duplicate().position(start).limit(start + length).slice();
+            checksum.reset();
+            checksum.update(record.duplicate());
+            if ((int) checksum.getValue() == content.getInt(position + Integer.BYTES)) {
+                String key = readString(record);
+                entries.put(key, new Entry(record.getLong(), record.getLong(), readString(record), record.slice(),
+                    null));
+                addRecord(key, RECORD_PREFIX_BYTES + length);
+            } else {
+                deadBytes += RECORD_PREFIX_BYTES + length;
+            }
+            position = start + length;
+        }
+        validLength = position;
+    }
+
+    /**
+     * Encodes a record: its length and CRC-32, the path, size, modification time and content hash of the item,
+     * then the string table and the summary.
+     */
+    private static byte[] encodeRecord(String key, Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        writeString(out, key);
+        out.writeLong(entry.size);
+        out.writeLong(entry.lastModified);
+        writeString(out, entry.contentHash);
+        if (entry.record != null) {
+            ByteBuffer summary = entry.record.duplicate();
+            while (summary.hasRemaining()) {
+                out.write(summary.get());
+            }
+        } else {
+            encodeSummary(entry.summary, out);
+        }
+        out.flush();
+
+        byte[] record = bytes.toByteArray();
+        CRC32 checksum = new CRC32();
+        checksum.update(record, RECORD_PREFIX_BYTES, record.length - RECORD_PREFIX_BYTES);
+        ByteBuffer.wrap(record).putInt(record.length - RECORD_PREFIX_BYTES).putInt((int) checksum.getValue());
+        return record;
+    }
+
+    private static void encodeSummary(ItemSummary summary, DataOutputStream out) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(body);
+
+        writeVarInt(data, summary.getNodes().size());
+        for (ItemSummary.NodeSummary node : summary.getNodes()) {
+            writeIndex(data, strings, node.getComponentName());
+            writeIndex(data, strings, node.getTextUniqueName().orElse(null));
+            writeVarInt(data, node.getUniqueNames().size());
+            for (String uniqueName : node.getUniqueNames()) {
+                writeIndex(data, strings, uniqueName);
+            }
+            writeVarInt(data, node.getParameters().size());
+            for (Map.Entry<String, String> parameter : node.getParameters().entrySet()) {
+                writeIndex(data, strings, parameter.getKey());
+                writeIndex(data, strings, parameter.getValue());
+            }
+            writeVarInt(data, node.getParameterHashes().size());
+            for (Map.Entry<String, String> parameter : node.getParameterHashes().entrySet()) {
+                writeIndex(data, strings, parameter.getKey());
+                writeIndex(data, strings, parameter.getValue());
+            }
+            writeVarInt(data, node.getOutputFlows().size());
+            for (String outputFlow : node.getOutputFlows()) {
+                writeIndex(data, strings, outputFlow);
+            }
+        }
+        writeVarInt(data, summary.getConnections().size());
+        for (ItemSummary.Connection connection : summary.getConnections()) {
+            writeIndex(data, strings, connection.getLabel());
+            writeIndex(data, strings, connection.getSource());
+            writeIndex(data, strings, connection.getTarget());
+        }
+        data.flush();
+
+        writeVarInt(out, strings.size());
+        for (String string : strings.keySet()) {
+            writeString(out, string);
+        }
+        body.writeTo(out);
+    }
+
+    private static ItemSummary decodeSummary(ByteBuffer in) {
+        String[] strings = new String[readVarInt(in)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(in);
+        }
+
+        int nodeCount = readVarInt(in);
+        List<ItemSummary.NodeSummary> nodes = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            String componentName = readIndex(in, strings);
+            String textUniqueName = readIndex(in, strings);
+            Set<String> uniqueNames = new LinkedHashSet<>();
+            for (int count = readVarInt(in); count > 0; count--) {
+                uniqueNames.add(readIndex(in, strings));
+            }
+            Map<String, String> parameters = new LinkedHashMap<>();
+            for (int count = readVarInt(in); count > 0; count--) {
+                parameters.put(readIndex(in, strings), readIndex(in, strings));
+            }
+            Map<String, String> parameterHashes = new LinkedHashMap<>();
+            for (int count = readVarInt(in); count > 0; count--) {
+                parameterHashes.put(readIndex(in, strings), readIndex(in, strings));
+            }
+            List<String> outputFlows = new ArrayList<>();
+            for (int count = readVarInt(in); count > 0; count--) {
+                outputFlows.add(readIndex(in, strings));
+            }
+            nodes.add(new ItemSummary.NodeSummary(i, componentName, textUniqueName, uniqueNames, parameters,
+                parameterHashes, outputFlows));
+        }
+
+        int connectionCount = readVarInt(in);
+        List<ItemSummary.Connection> connections = new ArrayList<>(connectionCount);
+        for (int i = 0; i < connectionCount; i++) {
+            connections.add(new ItemSummary.Connection(readIndex(in, strings), readIndex(in, strings),
+                readIndex(in, strings)));
+        }
+        return new ItemSummary(nodes, connections);
+    }
+
+    /**
+     * Writes the index of a string in the string table, adding it if needed; 0 stands for {@code null}.
+     */
+    private static void writeIndex(DataOutputStream out, Map<String, Integer> strings, String value)
+        throws IOException {
+        writeVarInt(out, value == null ? 0 : strings.computeIfAbsent(value, k -> strings.size()) + 1);
+    }
+
+    private static String readIndex(ByteBuffer in, String[] strings) {
+        int index = readVarInt(in);
+        return index == 0 ? null : strings[index - 1];
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package talend.modifier;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Byte-level prefilter deciding whether an item has to be parsed at all.
+ * <p>
+ * The item is read into memory and searched for a few markers, which is far cheaper than parsing it. Markers
+ * are only trusted where their meaning is unambiguous: the absence of {@code tRESTRequest} proves that a file
+ * has no such component, and the {@code value="..."} markers of the injected components are only ever
+ * written by their UNIQUE_NAME parameters. Anything else results in {@link Verdict#NEEDS_PARSE}.
+ * Items not encoded in an ASCII-compatible charset always need to be parsed.
+ */
+public class ItemPrefilter {
+
+    /**
+     * Outcome of the prefilter.
+     */
+    public enum Verdict {
+        /**
+         * The item is not relevant for the injection, e.g. a job without tRESTRequest for the status injection.
+         */
+        SKIP,
+        /**
+         * The item already contains the injection and does not need to be changed.
+         */
+        ALREADY_DONE,
+        /**
+         * The markers are not conclusive; the item has to be parsed.
+         */
+        NEEDS_PARSE
+    }
+
+    private static final byte[] T_REST_REQUEST = marker("tRESTRequest");
+    private static final byte[] T_REST_RESPONSE_STATUS =
+        marker("value=\"" + StatusInjector.DEFAULT_T_REST_RESPONSE_UNIQUE_NAME + "\"");
+    private static final byte[] T_JAVA_ROW_STATUS =
+        marker("value=\"" + StatusInjector.DEFAULT_T_JAVA_ROW_UNIQUE_NAME + "\"");
+    private static final byte[] C_TALEND_JOB = marker("cTalendJob");
+    private static final byte[] T_RUN_JOB = marker("tRunJob");
+
+    /**
+     * Decides whether the status injection has to parse the given item.
+     *
+     * @param itemPath the item to check
+     * @return {@link Verdict#SKIP} if the item has no tRESTRequest, {@link Verdict#ALREADY_DONE} if it already
+     * has both status components, otherwise {@link Verdict#NEEDS_PARSE}
+     * @throws IOException if the item cannot be read
+     */
+    public static Verdict forStatus(Path itemPath) throws IOException {
+        try (RunMetrics.Timer timer = RunMetrics.time(RunMetrics.Phase.CHECK)) {
+            ByteBuffer content = read(itemPath);
+            timer.read(content.limit());
+            if (!isAsciiCompatible(content)) {
+                return Verdict.NEEDS_PARSE;
+            }
+            if (indexOf(content, T_REST_REQUEST) < 0) {
+                return Verdict.SKIP;
+            }
+            if (indexOf(content, T_REST_RESPONSE_STATUS) >= 0 && indexOf(content, T_JAVA_ROW_STATUS) >= 0) {
+                return Verdict.ALREADY_DONE;
+            }
+            return Verdict.NEEDS_PARSE;
+        }
+    }
+
+    /**
+     * Determines whether the given route may reference jobs through cTalendJob components.
+     *
+     * @param itemPath the route item to check
+     * @return {@code false} if the item certainly has no cTalendJob component
+     * @throws IOException if the item cannot be read
+     */
+    public static boolean mayReferenceJobs(Path itemPath) throws IOException {
+        try (RunMetrics.Timer timer = RunMetrics.time(RunMetrics.Phase.CHECK)) {
+            ByteBuffer content = read(itemPath);
+            timer.read(content.limit());
+            return !isAsciiCompatible(content) || indexOf(content, C_TALEND_JOB) >= 0;
+        }
+    }
+
+    /**
+     * Determines whether the given job may start child jobs through tRunJob components.
+     *
+     * @param itemPath the job item to check
+     * @return {@code false} if the item certainly has no tRunJob component
+     * @throws IOException if the item cannot be read
+     */
+    public static boolean mayRunJobs(Path itemPath) throws IOException {
+        try (RunMetrics.Timer timer = RunMetrics.time(RunMetrics.Phase.CHECK)) {
+            ByteBuffer content = read(itemPath);
+            timer.read(content.limit());
+            return !isAsciiCompatible(content) || indexOf(content, T_RUN_JOB) >= 0;
+        }
+    }
+
+    private static ByteBuffer read(Path itemPath) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(itemPath));
+    }
+
+    /**
+     * Rejects UTF-16 and UTF-32 content, detected by a byte order mark or a zero byte at the start.
+     */
+    private static boolean isAsciiCompatible(ByteBuffer content) {
+        if (content.limit() < 2) {
+            return true;
+        }
+        int first = content.get(0) & 0xFF;
+        int second = content.get(1) & 0xFF;
+        return first != 0 && second != 0 && !(first == 0xFE && second == 0xFF) && !(first == 0xFF && second == 0xFE);
+    }
+
+    /**
+     * Finds the first occurrence of the pattern with the Boyer-Moore-Horspool algorithm.
+     *
+     * @param content the bytes to search
+     * @param pattern the bytes to find
+     * @return the index of the first occurrence, or -1 if the pattern does not occur
+     */
+    static int indexOf(ByteBuffer content, byte[] pattern) {
+        int n = content.limit();
+        int m = pattern.length;
+        if (m == 0) return 0;
+
+        int[] shift = new int[256];
+        Arrays.fill(shift, m);
+        for (int i = 0; i < m - 1; i++) {
+            shift[pattern[i] & 0xFF] = m - 1 - i;
+        }
+
+        int position = 0;
+        while (position <= n - m) {
+            int j = m - 1;
+            while (j >= 0 && content.get(position + j) == pattern[j]) {
+                j--;
+            }
+            if (j < 0) {
+                return position;
+            }
+            position += shift[content.get(position + m - 1) & 0xFF];
+        }
+        return -1;
+    }
+
+    private static byte[] marker(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
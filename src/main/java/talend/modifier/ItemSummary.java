@@ -0,0 +1,399 @@
+package talend.modifier;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Immutable summary of the facts the injections decide on, read from an item in a single StAX pass without
+ * building a DOM.
+ * <p>
+ * The summary covers the top-level {@code node} elements (component name, UNIQUE_NAMEs, parameters and the
+ * output flows of their SCHEMAS table) and {@code connection} elements (label, source and target). Lookups
+ * follow the semantics of the corresponding {@link ProcessModel} and {@link TalendComponentsHelper} methods,
+ * so a decision taken on the summary is the one that would be taken on the loaded document. Items are only
+ * loaded as DOM once a decision requires changing them.
+ * <p>
+ * Only the values of the parameters naming components and jobs (UNIQUE_NAME, PROCESS* and SELECTED_JOB_NAME*)
+ * are kept as text. Every other parameter, e.g. the CODE of a tJava, is kept as a short hash of its value,
+ * which is enough to compare it with an expected value; the size of a summary therefore depends on the number
+ * of components, not on the amount of code in the item.
+ */
+public final class ItemSummary {
+
+    private static final int VALUE_HASH_BYTES = 16;
+    private static final ThreadLocal<MessageDigest> VALUE_DIGEST = ThreadLocal.withInitial(RunManifest::newDigest);
+
+    private final List<NodeSummary> nodes;
+    private final List<Connection> connections;
+    private final Map<String, List<NodeSummary>> nodesByComponentName = new HashMap<>();
+    private final Map<String, List<NodeSummary>> nodesByUniqueName = new HashMap<>();
+    private final Map<String, NodeSummary> nodesByTextUniqueName = new HashMap<>();
+    private final Set<String> connectionLabels = new HashSet<>();
+
+    /**
+     * Summary of a single top-level {@code node} element.
+     */
+    public static final class NodeSummary {
+        private final int ordinal;
+        private final String componentName;
+        private final String textUniqueName;
+        private final Set<String> uniqueNames;
+        private final Map<String, String> parameters;
+        private final Map<String, String> parameterHashes;
+        private final List<String> outputFlows;
+
+        public NodeSummary(int ordinal, String componentName, String textUniqueName, Set<String> uniqueNames,
+                           Map<String, String> parameters, Map<String, String> parameterHashes,
+                           List<String> outputFlows) {
+            this.ordinal = ordinal;
+            this.componentName = componentName;
+            this.textUniqueName = textUniqueName;
+            this.uniqueNames = Collections.unmodifiableSet(new LinkedHashSet<>(uniqueNames));
+            this.parameters = Collections.unmodifiableMap(new LinkedHashMap<>(parameters));
+            this.parameterHashes = Collections.unmodifiableMap(new LinkedHashMap<>(parameterHashes));
+            this.outputFlows = List.copyOf(outputFlows);
+        }
+
+        /**
+         * @return the position of the node among the top-level nodes of the item, starting at 0
+         */
+        public int getOrdinal() {
+            return ordinal;
+        }
+
+        public String getComponentName() {
+            return componentName;
+        }
+
+        /**
+         * @return the value of the first TEXT UNIQUE_NAME parameter of the node
+         */
+        public Optional<String> getTextUniqueName() {
+            return Optional.ofNullable(textUniqueName);
+        }
+
+        /**
+         * @return the values of all UNIQUE_NAME parameters of the node
+         */
+        public Set<String> getUniqueNames() {
+            return uniqueNames;
+        }
+
+        /**
+         * @return the value of the first parameter with the given name, like
+         *     {@link TalendComponentsHelper#getParameterValue(org.w3c.dom.Element, String)}; empty for parameters
+         *     only kept as hash
+         */
+        public Optional<String> getParameterValue(String paramName) {
+            return Optional.ofNullable(parameters.get(paramName));
+        }
+
+        /**
+         * @return {@code true} if the first parameter with the given name has the given value
+         */
+        public boolean hasParameterValue(String paramName, String value) {
+            String text = parameters.get(paramName);
+            if (text != null) {
+                return text.equals(value);
+            }
+            String hash = parameterHashes.get(paramName);
+            return hash != null && hash.equals(hashValue(value));
+        }
+
+        /**
+         * @return the first value of every parameter kept as text, by parameter name, in document order
+         */
+        public Map<String, String> getParameters() {
+            return parameters;
+        }
+
+        /**
+         * @return the hash of the first value of every other parameter, by parameter name, in document order
+         */
+        public Map<String, String> getParameterHashes() {
+            return parameterHashes;
+        }
+
+        /**
+         * @return the SCHEMA values of the first SCHEMAS table of the node, e.g. the output flows of a tRESTRequest
+         */
+        public List<String> getOutputFlows() {
+            return outputFlows;
+        }
+    }
+
+    /**
+     * Summary of a single top-level {@code connection} element.
+     */
+    public static final class Connection {
+        private final String label;
+        private final String source;
+        private final String target;
+
+        public Connection(String label, String source, String target) {
+            this.label = label;
+            this.source = source;
+            this.target = target;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+    }
+
+    public ItemSummary(List<NodeSummary> nodes, List<Connection> connections) {
+        this.nodes = List.copyOf(nodes);
+        this.connections = List.copyOf(connections);
+
+        for (NodeSummary node : this.nodes) {
+            nodesByComponentName.computeIfAbsent(node.componentName, k -> new ArrayList<>()).add(node);
+            for (String uniqueName : node.uniqueNames) {
+                nodesByUniqueName.computeIfAbsent(uniqueName, k -> new ArrayList<>()).add(node);
+            }
+            if (node.textUniqueName != null) {
+                nodesByTextUniqueName.putIfAbsent(node.textUniqueName, node);
+            }
+        }
+        for (Connection connection : this.connections) {
+            connectionLabels.add(connection.label);
+        }
+    }
+
+    /**
+     * Reads the summary of an item.
+     *
+     * @param itemPath the item
+     * @return the summary
+     * @throws IOException if the item cannot be read or is not well-formed
+     */
+    public static ItemSummary read(Path itemPath) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(itemPath))) {
+            return read(in, itemPath);
+        }
+    }
+
+    /**
+     * Reads the summary of an item from a stream, e.g. one computing the hash of the item at the same time.
+     *
+     * @param in       the content of the item; it is not closed
+     * @param itemPath the item, for metrics and error messages
+     * @return the summary
+     * @throws IOException if the item cannot be read or is not well-formed
+     */
+    static ItemSummary read(InputStream in, Path itemPath) throws IOException {
+        try (RunMetrics.Timer timer = RunMetrics.time(RunMetrics.Phase.PARSE)) {
+            timer.read(Files.size(itemPath));
+            XMLStreamReader reader = FileHelper.createStreamReader(in);
+            try {
+                return read(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to read " + itemPath + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static ItemSummary read(XMLStreamReader reader) throws XMLStreamException {
+        List<NodeSummary> nodes = new ArrayList<>();
+        List<Connection> connections = new ArrayList<>();
+
+        int depth = 0;
+        String componentName = null;
+        String textUniqueName = null;
+        Set<String> uniqueNames = new LinkedHashSet<>();
+        Map<String, String> parameters = new LinkedHashMap<>();
+        Map<String, String> parameterHashes = new LinkedHashMap<>();
+        List<String> outputFlows = new ArrayList<>();
+        int schemasDepth = 0;
+        boolean schemasSeen = false;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String name = reader.getLocalName();
+                if (depth == 2 && "node".equals(name)) {
+                    componentName = attribute(reader, "componentName");
+                } else if (depth == 2 && "connection".equals(name)) {
+                    connections.add(new Connection(attribute(reader, "label"), attribute(reader, "source"),
+                        attribute(reader, "target")));
+                } else if (componentName != null && "elementParameter".equals(name)) {
+                    String paramName = attribute(reader, "name");
+                    String value = attribute(reader, "value");
+                    if (isKeptAsText(paramName)) {
+                        parameters.putIfAbsent(paramName, value);
+                    } else if (!parameterHashes.containsKey(paramName)) {
+                        parameterHashes.put(paramName, hashValue(value));
+                    }
+                    if ("UNIQUE_NAME".equals(paramName)) {
+                        uniqueNames.add(value);
+                        if (textUniqueName == null && "TEXT".equals(reader.getAttributeValue(null, "field"))) {
+                            textUniqueName = value;
+                        }
+                    } else if (!schemasSeen && "SCHEMAS".equals(paramName) &&
+                        "TABLE".equals(reader.getAttributeValue(null, "field"))) {
+                        schemasSeen = true;
+                        schemasDepth = depth;
+                    }
+                } else if (schemasDepth > 0 && "elementValue".equals(name) &&
+                    "SCHEMA".equals(reader.getAttributeValue(null, "elementRef"))) {
+                    outputFlows.add(attribute(reader, "value"));
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == schemasDepth) {
+                    schemasDepth = 0;
+                }
+                if (depth == 2 && componentName != null) {
+                    nodes.add(new NodeSummary(nodes.size(), componentName, textUniqueName, uniqueNames, parameters,
+                        parameterHashes, outputFlows));
+                    componentName = null;
+                    textUniqueName = null;
+                    uniqueNames.clear();
+                    parameters.clear();
+                    parameterHashes.clear();
+                    outputFlows.clear();
+                    schemasSeen = false;
+                }
+                depth--;
+            }
+        }
+        return new ItemSummary(nodes, connections);
+    }
+
+    private static boolean isKeptAsText(String paramName) {
+        return "UNIQUE_NAME".equals(paramName) || paramName.startsWith("PROCESS") ||
+            paramName.startsWith("SELECTED_JOB_NAME");
+    }
+
+    /**
+     * @return the hash a parameter value is kept as: the first bytes of its SHA-256, Base64 encoded
+     */
+    static String hashValue(String value) {
+        MessageDigest digest = VALUE_DIGEST.get();
+        byte[] hash = digest.digest(value.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, VALUE_HASH_BYTES));
+    }
+
+    private static String attribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        return value == null ? "" : value;
+    }
+
+    /**
+     * @return all top-level nodes, in document order
+     */
+    public List<NodeSummary> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return all top-level connections, in document order
+     */
+    public List<Connection> getConnections() {
+        return connections;
+    }
+
+    /**
+     * @param componentName the component type, e.g. {@code tJava}
+     * @return all nodes of the given component type, in document order
+     */
+    public List<NodeSummary> getNodesByComponentName(String componentName) {
+        return Collections.unmodifiableList(nodesByComponentName.getOrDefault(componentName,
+            Collections.emptyList()));
+    }
+
+    /**
+     * @param uniqueName the value of a UNIQUE_NAME parameter
+     * @return all nodes having a UNIQUE_NAME parameter with the given value, in document order
+     */
+    public List<NodeSummary> getNodesByUniqueName(String uniqueName) {
+        return Collections.unmodifiableList(nodesByUniqueName.getOrDefault(uniqueName, Collections.emptyList()));
+    }
+
+    public boolean hasComponent(String componentName) {
+        return nodesByComponentName.containsKey(componentName);
+    }
+
+    public boolean hasNodeWithUniqueName(String uniqueName) {
+        return nodesByUniqueName.containsKey(uniqueName);
+    }
+
+    /**
+     * @param uniqueName the value of a TEXT UNIQUE_NAME parameter
+     * @return the first node having a TEXT UNIQUE_NAME parameter with the given value
+     */
+    public Optional<NodeSummary> findNodeByTextUniqueName(String uniqueName) {
+        return Optional.ofNullable(nodesByTextUniqueName.get(uniqueName));
+    }
+
+    /**
+     * @return the TEXT UNIQUE_NAME of the first node of the given component type that has one, like
+     *     {@link TalendComponentsHelper#getUniqueComponentName(ProcessModel, String)}
+     */
+    public Optional<String> getUniqueComponentName(String componentName) {
+        for (NodeSummary node : getNodesByComponentName(componentName)) {
+            if (node.textUniqueName != null) {
+                return Optional.of(node.textUniqueName);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return {@code true} if a parameter of the first node of the given component type and UNIQUE_NAME has the
+     *     given value
+     */
+    public boolean hasParameterValue(String componentName, String uniqueName, String paramName, String value) {
+        for (NodeSummary node : getNodesByUniqueName(uniqueName)) {
+            if (componentName.equals(node.componentName)) {
+                return node.hasParameterValue(paramName, value);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code true} if the first tRESTRequest of the item declares the given output flow, like
+     *     {@link TalendComponentsHelper#hasTRestRequestOutputFlow(ProcessModel, String)}
+     */
+    public boolean hasTRestRequestOutputFlow(String outputFlow) {
+        List<NodeSummary> tRestRequests = getNodesByComponentName("tRESTRequest");
+        return !tRestRequests.isEmpty() && tRestRequests.get(0).outputFlows.contains(outputFlow);
+    }
+
+    public boolean hasConnection(String label) {
+        return connectionLabels.contains(label);
+    }
+
+    /**
+     * Builds the graph of the connections. The graph memoizes reachability and is not thread-safe, so every
+     * call returns a new graph; callers keep it for as long as they query it.
+     *
+     * @return the graph of all connections
+     */
+    public ConnectionGraph getConnectionGraph() {
+        ConnectionGraph.Builder builder = new ConnectionGraph.Builder();
+        for (Connection connection : connections) {
+            builder.addConnection(connection.source, connection.target);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,117 @@
+package talend.modifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the jobs a set of jobs depends on through tRunJob components, transitively.
+ * <p>
+ * The child jobs of an item are read from its summary in the {@link ItemCatalog} (after a prefilter check for
+ * tRunJob) and memoized per item for the lifetime of the JVM, as long as the size and modification time of the
+ * item do not change.
+ * Resolving the closures of several routes sharing child jobs therefore reads every job item once. "Latest"
+ * references are resolved against the {@link WorkspaceIndex} on every resolution, so a memoized item never
+ * pins an outdated version.
+ */
+public class JobDependencies {
+
+    private static final Map<Path, ChildJobs> CHILD_JOBS_CACHE = new ConcurrentHashMap<>();
+
+    private static final class ChildJobs {
+        private final long size;
+        private final long lastModified;
+        private final List<JobRef> references;
+
+        private ChildJobs(long size, long lastModified, List<JobRef> references) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.references = references;
+        }
+    }
+
+    /**
+     * Resolves the given jobs and every job they start through tRunJob, transitively. Every job version is
+     * contained once, no matter how many times it is referenced, and cycles between jobs are harmless.
+     *
+     * @param index the index of the {@code process} directory the jobs are located in
+     * @param roots the jobs to start from, e.g. the cTalendJob references of a route
+     * @return the resolved jobs (with concrete versions) and their items, in breadth-first order
+     * @throws IOException if a referenced job item cannot be found or read
+     */
+    public static Map<JobRef, File> resolveClosure(WorkspaceIndex index, Collection<JobRef> roots)
+        throws IOException {
+        Map<JobRef, File> closure = new LinkedHashMap<>();
+        Deque<JobRef> pending = new ArrayDeque<>(roots);
+
+        while (!pending.isEmpty()) {
+            JobRef job = resolveVersion(index, pending.poll());
+            if (closure.containsKey(job)) {
+                continue;
+            }
+
+            File jobItem = index.findJobItem(job.getJobName(), job.getVersion())
+                .orElseThrow(() -> new IOException("Job file not found: " + job.getItemFileName() + " under " +
+                    index.getProcessDir().getAbsolutePath()));
+            closure.put(job, jobItem);
+            pending.addAll(findChildJobs(jobItem));
+        }
+        return closure;
+    }
+
+    /**
+     * Finds the jobs started by the tRunJob components of a job item.
+     *
+     * @param jobItem the job item
+     * @return the distinct references of the item in document order; versions may be {@link JobRef#LATEST}
+     * @throws IOException if the item cannot be read
+     */
+    public static List<JobRef> findChildJobs(File jobItem) throws IOException {
+        Path path = jobItem.toPath().toAbsolutePath().normalize();
+        long size = Files.size(path);
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+
+        ChildJobs cached = CHILD_JOBS_CACHE.get(path);
+        if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+            return cached.references;
+        }
+
+        List<JobRef> references = ItemPrefilter.mayRunJobs(path) ? readChildJobs(path) : Collections.emptyList();
+        CHILD_JOBS_CACHE.put(path, new ChildJobs(size, lastModified, references));
+        return references;
+    }
+
+    /**
+     * Drops all memoized child jobs.
+     */
+    public static void clearCache() {
+        CHILD_JOBS_CACHE.clear();
+    }
+
+    private static JobRef resolveVersion(WorkspaceIndex index, JobRef job) throws IOException {
+        if (!job.isLatest()) {
+            return job;
+        }
+        String version = index.findLatestVersion(job.getJobName())
+            .orElseThrow(() -> new IOException("Job version not resolved: " + job.getJobName()));
+        return new JobRef(job.getJobName(), version);
+    }
+
+    private static List<JobRef> readChildJobs(Path jobItem) throws IOException {
+        Set<JobRef> references = new LinkedHashSet<>();
+        ItemSummary summary = ItemCatalog.getDefault().getSummary(jobItem);
+        for (ItemSummary.NodeSummary node : summary.getNodesByComponentName("tRunJob")) {
+            String jobName = node.getParameterValue("PROCESS").orElse("");
+            String version = node.getParameterValue("PROCESS:PROCESS_TYPE_VERSION")
+                .filter(value -> !value.isBlank())
+                .orElse(JobRef.LATEST);
+            if (!jobName.isBlank()) {
+                references.add(new JobRef(jobName, version));
+            }
+        }
+        return Collections.unmodifiableList(new ArrayList<>(references));
+    }
+}
@@ -0,0 +1,64 @@
+package talend.modifier;
+
+import java.util.Objects;
+
+/**
+ * Reference to one version of a job, e.g. from a cTalendJob component of a route or a tRunJob component
+ * of a job. The version is either a concrete version such as {@code 0.1} or {@code Latest}.
+ */
+public final class JobRef {
+
+    public static final String LATEST = "Latest";
+
+    private final String jobName;
+    private final String version;
+
+    public JobRef(String jobName, String version) {
+        this.jobName = Objects.requireNonNull(jobName);
+        this.version = Objects.requireNonNull(version);
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return {@code true} if the reference points to whatever version of the job is the latest one
+     */
+    public boolean isLatest() {
+        return LATEST.equalsIgnoreCase(version);
+    }
+
+    /**
+     * @return the file name of the referenced job item, e.g. {@code myJob_0.1.item}
+     */
+    public String getItemFileName() {
+        return jobName + "_" + version + ".item";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof JobRef)) {
+            return false;
+        }
+        JobRef other = (JobRef) o;
+        return jobName.equals(other.jobName) && version.equals(other.version);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * jobName.hashCode() + version.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return jobName + " " + version;
+    }
+}
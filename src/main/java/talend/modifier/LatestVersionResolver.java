@@ -2,17 +2,31 @@ package talend.modifier;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.*;
 
 /**
  * Utility class for resolving the latest version of a job in the given directory.
+ * <p>
+ * The latest versions of all jobs of a directory are computed with a single walk and memoized for the
+ * lifetime of the JVM, so any number of "Latest" references is resolved with one pass over the directory.
+ * Long-running modes have to call {@link #clearCache()} when items may have been added in between.
  */
 public class LatestVersionResolver {
 
+    /**
+     * Matches job item file names of the form "jobName_major.minor.item".
+     */
+    static final Pattern JOB_ITEM_PATTERN = Pattern.compile("(.+)_(\\d+)\\.(\\d+)\\.item");
+
+    private static final Map<File, Map<String, String>> LATEST_VERSIONS_CACHE = new ConcurrentHashMap<>();
+
     /**
      * Finds the latest version of a job based on the given directory and job name.
      *
@@ -27,66 +41,96 @@ public class LatestVersionResolver {
             return Optional.empty();
         }
 
-        /* 1. Walk through the directory structure to find all files.
-         * 2. Filter only regular files (skip directories).
-         * 3. Get the file name from the path and convert to a string.
-         * 4. Filter filenames that match the pattern "jobName_version.item".
-         * 5. Remove the job name and file extension to extract the version part.
-         * 6. Parse the version string into a list of integers.
-         * 7. Find the maximum version using a custom comparator.
-         * 8. If a version is found, format it back to a string.
-         * */
-        try (Stream<Path> allFiles = Files.walk(dir.toPath())) {
-            return allFiles
-                .filter(Files::isRegularFile)
-                .map(Path::getFileName)
-                .map(Path::toString)
-                .filter(name -> name.matches(Pattern.quote(jobName) + "_\\d+\\.\\d+\\.item"))
-                .map(name -> name.replaceFirst(Pattern.quote(jobName) + "_", "").replace(".item", ""))
-                .map(LatestVersionResolver::parseVersion)
-                .max(LatestVersionResolver::compareVersions)
-                .map(LatestVersionResolver::formatVersion);
+        return Optional.ofNullable(findLatestVersions(dir).get(jobName));
+    }
+
+    /**
+     * Finds the latest version of every job in the given directory with a single directory walk.
+     * The result is memoized per directory.
+     *
+     * @param dir the directory where job files are located
+     * @return an unmodifiable map of job names to their latest version
+     * @throws IOException if an I/O error occurs while reading files
+     */
+    public static Map<String, String> findLatestVersions(File dir) throws IOException {
+        if (!dir.exists() || !dir.isDirectory()) {
+            return Collections.emptyMap();
+        }
+
+        try {
+            return LATEST_VERSIONS_CACHE.computeIfAbsent(dir.getCanonicalFile(), canonicalDir -> {
+                try {
+                    return RunMetrics.time(RunMetrics.Phase.RESOLVE, () -> {
+                        try (Stream<Path> allFiles = Files.walk(canonicalDir.toPath())) {
+                            return collectLatestVersions(allFiles
+                                .filter(Files::isRegularFile)
+                                .map(Path::getFileName)
+                                .map(Path::toString));
+                        }
+                    });
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
     }
 
     /**
-     * Parses the version string into a list of integers.
-     * Example: Input: "1.2", Output: [1, 2]
+     * Drops all memoized results so that the next lookup walks the directories again.
+     */
+    public static void clearCache() {
+        LATEST_VERSIONS_CACHE.clear();
+    }
+
+    /**
+     * Computes the latest version of every job among the given item file names.
+     * Names not matching the pattern "jobName_major.minor.item" are ignored.
      *
-     * @param version the version string
-     * @return a list of integers representing the version parts
+     * @param fileNames the item file names
+     * @return an unmodifiable map of job names to their latest version
      */
-    private static List<Integer> parseVersion(String version) {
-        return Arrays.stream(version.split("\\."))
-            .map(Integer::parseInt)
-            .collect(Collectors.toList());
+    static Map<String, String> collectLatestVersions(Stream<String> fileNames) {
+        Map<String, long[]> latestVersions = new HashMap<>();
+        Matcher matcher = JOB_ITEM_PATTERN.matcher("");
+
+        fileNames.forEach(name -> {
+            if (!matcher.reset(name).matches()) {
+                return;
+            }
+            long version = packVersion(Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)));
+            long[] latest = latestVersions.computeIfAbsent(matcher.group(1), k -> new long[]{-1L});
+            if (version > latest[0]) {
+                latest[0] = version;
+            }
+        });
+
+        Map<String, String> result = new HashMap<>(latestVersions.size() * 2);
+        latestVersions.forEach((jobName, latest) -> result.put(jobName, formatVersion(latest[0])));
+        return Collections.unmodifiableMap(result);
     }
 
     /**
-     * Compares two version lists (Comparator).
+     * Packs a major and minor version into a single comparable value.
+     * Example: Input: 1, 2, Output: 0x0000000100000002
      *
-     * @param v1 the first version list
-     * @param v2 the second version list
-     * @return a negative value if v1 is less than v2, positive if greater, or zero if equal
+     * @param major the major version part
+     * @param minor the minor version part
+     * @return the packed version, ordered like the version itself
      */
-    private static int compareVersions(List<Integer> v1, List<Integer> v2) {
-        for (int i = 0; i < Math.min(v1.size(), v2.size()); i++) {
-            int cmp = Integer.compare(v1.get(i), v2.get(i));
-            if (cmp != 0) return cmp;
-        }
-        return Integer.compare(v1.size(), v2.size());
+    static long packVersion(int major, int minor) {
+        return ((long) major << 32) | (minor & 0xFFFFFFFFL);
     }
 
     /**
-     * Formats the version parts as a dot-separated string.
-     * Example: Input: [1, 2], Output: "1.2"
+     * Formats a packed version as a dot-separated string.
+     * Example: Input: 0x0000000100000002, Output: "1.2"
      *
-     * @param versionParts the list of version parts
+     * @param packedVersion the version packed by {@link #packVersion(int, int)}
      * @return the formatted version string
      */
-    private static String formatVersion(List<Integer> versionParts) {
-        return versionParts.stream()
-            .map(String::valueOf)
-            .collect(Collectors.joining("."));
+    static String formatVersion(long packedVersion) {
+        return (packedVersion >>> 32) + "." + (packedVersion & 0xFFFFFFFFL);
     }
 }
@@ -1,35 +1,83 @@
 package talend.modifier;
 
-import org.w3c.dom.*;
-
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 
 public class LoggerInjector {
     public static final String DEFAULT_TJAVA_UNIQUE_NAME = "__logconfig__";
 
-    public static void injectLoggerCodeToAllJobsOfRoute(String routeItemPath, String newCode) {
+    /**
+     * Injects the logging code into every job the route depends on, one job after the other.
+     *
+     * @param routeItemPath the route item
+     * @param newCode       the code of the logger configuration tJava
+     * @return {@code true} if all jobs were processed successfully
+     */
+    public static boolean injectLoggerCodeToAllJobsOfRoute(String routeItemPath, String newCode) {
         try {
-            Map<String, String> jobNamesAndVersions = RouteItemHelper.
-                getJobNamesAndVersionsByRouteItemPath(routeItemPath);
+            Map<JobRef, File> jobItems = RouteItemHelper.resolveJobItemsByRouteItemPath(routeItemPath);
 
-            if (jobNamesAndVersions.isEmpty()) {
+            if (jobItems.isEmpty()) {
                 System.out.println("No cTalendJob references found in route.");
-                return;
+                return true;
             }
 
-            for (Map.Entry<String, String> entry : jobNamesAndVersions.entrySet()) {
-                String jobPath = RouteItemHelper.buildJobFilePathByRouteItemPath(
-                    routeItemPath,
-                    entry.getKey(),
-                    entry.getValue()
-                );
+            for (File jobItem : jobItems.values()) {
+                String jobPath = jobItem.getAbsolutePath();
                 System.out.println("Injecting into: " + jobPath);
-                processItemFile(jobPath, newCode);
+                RunMetrics.measureItem(jobPath, path -> processItemFile(path, newCode));
             }
+            return true;
         } catch (Exception e) {
             e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Injects the logging code into all jobs of many routes. The job closures of all routes are resolved
+     * first and merged, so a job shared by several routes is loaded and written at most once; the jobs are
+     * then processed in parallel. A route whose jobs cannot be resolved is reported and skipped.
+     *
+     * @param routeItemPaths the route items
+     * @param newCode        the code of the logger configuration tJava
+     * @return the outcome of every job
+     */
+    public static List<BatchRunner.ItemResult> injectLoggerCodeToAllJobsOfRoutes(List<Path> routeItemPaths,
+                                                                                 String newCode) {
+        return injectLoggerCodeToAllJobsOfRoutes(routeItemPaths, newCode, RunJournal.disabled());
+    }
+
+    /**
+     * Injects the logging code into all jobs of many routes, skipping the jobs the journal reports as completed.
+     *
+     * @param routeItemPaths the route items
+     * @param newCode        the code of the logger configuration tJava
+     * @param journal        the journal of the run
+     * @return the outcome of every processed job
+     */
+    public static List<BatchRunner.ItemResult> injectLoggerCodeToAllJobsOfRoutes(List<Path> routeItemPaths,
+                                                                                 String newCode, RunJournal journal) {
+        Set<Path> jobItems = new LinkedHashSet<>();
+        int unresolvedRoutes = 0;
+
+        for (Path routeItemPath : routeItemPaths) {
+            try {
+                Map<JobRef, File> routeJobs = RouteItemHelper.resolveJobItemsByRouteItemPath(routeItemPath.toString());
+                for (File jobItem : routeJobs.values()) {
+                    jobItems.add(jobItem.toPath().toAbsolutePath().normalize());
+                }
+            } catch (Exception e) {
+                unresolvedRoutes++;
+                System.out.println("Unable to resolve the jobs of route " + routeItemPath + ": " + e.getMessage());
+            }
         }
+
+        System.out.println("Resolved " + jobItems.size() + " distinct job item(s) from " +
+            (routeItemPaths.size() - unresolvedRoutes) + " route(s).");
+        return BatchRunner.run(new ArrayList<>(jobItems), jobPath -> processItemFile(jobPath, newCode), journal);
     }
 
     public static void injectLoggerCodeToItem(String itemPathToInject, String newCode) {
@@ -48,7 +96,7 @@ public class LoggerInjector {
         }
 
         try {
-            LoggerInjector.processItemFile(file.getAbsolutePath(), newCode);
+            RunMetrics.measureItem(file.getAbsolutePath(), path -> processItemFile(path, newCode));
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -56,46 +104,56 @@ public class LoggerInjector {
 
     public static void processItemFile(String itemPath, String newCode) throws Exception {
 
-        Document doc = FileHelper.loadDocument(itemPath);
-        doc.getDocumentElement().normalize();
-        Element root = doc.getDocumentElement();
-
-        String prejobName = TalendComponentsHelper.getUniqueComponentName(doc, "tPrejob")
-            .orElseGet(() -> {
-                Element newPrejob = TalendComponentsHelper.getNewTPreJobComponent(doc);
-                root.appendChild(newPrejob);
-                return TalendComponentsHelper.DEFAULT_PREJOB_UNIQUE_NAME;
-            });
-
-        if (!TalendComponentsHelper.hasComponentExists(
-            doc,
-            DEFAULT_TJAVA_UNIQUE_NAME,
-            "UNIQUE_NAME"
-        )) {
-
-            Element tJavaWithCustomCodeNode = TalendComponentsHelper.getNewTJavaComponent(
-                doc,
-                DEFAULT_TJAVA_UNIQUE_NAME,
-                newCode
-            );
-
-            root.appendChild(tJavaWithCustomCodeNode);
-        } else {
-            TalendComponentsHelper.updateParameterValue(
-                doc,
-                "tJava",
-                DEFAULT_TJAVA_UNIQUE_NAME,
-                "CODE", newCode
-            );
+        RunManifest manifest = RunManifest.getDefault();
+        if (manifest.isUpToDate(itemPath, RunManifest.MODE_LOGGER, newCode)) {
+            System.out.println("Unchanged since last run, skipped: " + itemPath);
+            return;
         }
 
-        TalendComponentsHelper.connectOneComponentToTheOther(
-            doc,
-            prejobName,
-            DEFAULT_TJAVA_UNIQUE_NAME
-        );
+        String contentHash = injectLoggerCode(itemPath, newCode, ItemCatalog.getDefault().get(Paths.get(itemPath)));
+        manifest.record(itemPath, RunManifest.MODE_LOGGER, newCode, contentHash);
+    }
+
+    /**
+     * Computes the changes the logger injection would make to an item, without writing anything. The changes
+     * are decided on the summary of the item in the {@link ItemCatalog}, so an unchanged item is not even read.
+     *
+     * @param itemPath the item to plan
+     * @param newCode  the code of the logger configuration tJava
+     * @return the planned changes; empty if the item is already up to date
+     * @throws Exception if the item cannot be read or parsed
+     */
+    public static ChangePlan.ItemPlan planItemFile(String itemPath, String newCode) throws Exception {
+        if (RunManifest.getDefault().isUpToDate(itemPath, RunManifest.MODE_LOGGER, newCode)) {
+            return ChangePlan.ItemPlan.unchanged(itemPath);
+        }
+
+        ItemCatalog.Entry entry = ItemCatalog.getDefault().get(Paths.get(itemPath));
+        return new ChangePlan.ItemPlan(itemPath, entry.getContentHash(),
+            evaluateLoggerRules(entry.getSummary(), newCode).getActions());
+    }
 
-        FileHelper.saveDocument(doc, itemPath);
+    /**
+     * @return the content hash of the item after the injection
+     */
+    private static String injectLoggerCode(String itemPath, String newCode, ItemCatalog.Entry entry) throws Exception {
+        InjectionRules.Evaluation evaluation = evaluateLoggerRules(entry.getSummary(), newCode);
+        String contentHash = entry.getContentHash();
+        // Items that need no change are never loaded as a document
+        if (evaluation.getActions().isEmpty()) {
+            System.out.println("Logger configuration already present, skipped: " + itemPath);
+            return contentHash;
+        }
+        contentHash = evaluation.applyTo(Paths.get(itemPath), entry.getSummary()).orElse(contentHash);
         System.out.println("Processing completed for: " + itemPath);
+        return contentHash;
+    }
+
+    /**
+     * Decides on the changes of the logger injection with the built-in {@link InjectionRules#LOGGER} rules.
+     */
+    static InjectionRules.Evaluation evaluateLoggerRules(ItemSummary summary, String newCode) {
+        return InjectionRules.builtIn(InjectionRules.LOGGER).evaluate(summary,
+            Map.of(InjectionRules.SNIPPET, newCode));
     }
 }
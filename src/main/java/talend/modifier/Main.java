@@ -1,33 +1,274 @@
 package talend.modifier;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
 public class Main {
 
+    /**
+     * Exit status of a successful command.
+     */
+    public static final int EXIT_OK = 0;
+    /**
+     * Exit status of a command that failed for at least one item.
+     */
+    public static final int EXIT_FAILED = 1;
+    /**
+     * Exit status of an invalid command line.
+     */
+    public static final int EXIT_USAGE = 2;
+
+    /**
+     * Batch commands that keep a {@link RunJournal} and can be resumed.
+     */
+    private static final Set<String> JOURNALED_FLAGS = Set.of("--log-all", "--status-all", "--log-routes",
+        "--rules", "--apply");
+
     public static void main(String[] args) {
+        if (args.length > 0 && "--daemon".equals(args[0])) {
+            Daemon.serve(System.in, System.out);
+            return;
+        }
+
+        int status = run(args);
+        if (status != EXIT_OK) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Runs a single command.
+     *
+     * @param args the command line, e.g. {@code --log-item <itemPath>}
+     * @return the exit status of the command
+     */
+    public static int run(String[] args) {
+        Instant startedAt = Instant.now();
+        long start = System.nanoTime();
+
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        String reportFile = null;
+        int reportIndex = arguments.indexOf("--report");
+        if (reportIndex >= 0 && reportIndex + 1 < arguments.size()) {
+            reportFile = arguments.remove(reportIndex + 1);
+            arguments.remove(reportIndex);
+        }
+        boolean resume = arguments.remove("--resume");
+        args = arguments.toArray(new String[0]);
 
         if (args.length < 2) {
             showUsage("The number of arguments is less than necessary;" +
                 " exactly two are needed.");
-            return;
+            return EXIT_USAGE;
         }
 
         String flag = args[0];
         String itemPath = args[1];
+        boolean success;
+
+        if (resume && !JOURNALED_FLAGS.contains(flag)) {
+            showUsage("--resume can only be used with " + String.join(", ", new TreeSet<>(JOURNALED_FLAGS)) + ".");
+            return EXIT_USAGE;
+        }
+        // Validated before the journal is opened, which would otherwise be left behind
+        if ("--rules".equals(flag) && args.length < 3) {
+            showUsage("--rules needs a rule file and a workspace directory or item.");
+            return EXIT_USAGE;
+        }
+        RunJournal journal;
+        try {
+            journal = JOURNALED_FLAGS.contains(flag) ? RunJournal.open(arguments, resume) : RunJournal.disabled();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return EXIT_FAILED;
+        }
+
+        try {
+            switch (flag) {
+                case "--status-svc":
+                    success = StatusInjector.injectStatusToService(itemPath);
+                    break;
+                case "--log-route":
+                    success = LoggerInjector.injectLoggerCodeToAllJobsOfRoute(itemPath,
+                        ExternalCode.T_JAVA_LOGCONFIG_CODE);
+                    break;
+                case "--log-routes":
+                    success = logRoutes(Arrays.asList(args).subList(1, args.length), journal);
+                    break;
+                case "--log-item":
+                    LoggerInjector.injectLoggerCodeToItem(itemPath,
+                        ExternalCode.T_JAVA_LOGCONFIG_CODE);
+                    success = true;
+                    break;
+                case "--log-all":
+                    success = runBatch(itemPath, jobPath -> LoggerInjector.processItemFile(jobPath,
+                        ExternalCode.T_JAVA_LOGCONFIG_CODE), journal);
+                    break;
+                case "--status-all":
+                    success = runBatch(itemPath, StatusInjector::processServiceFile, journal);
+                    break;
+                case "--plan-log":
+                    success = plan(itemPath, args.length > 2 ? args[2] : null, RunManifest.MODE_LOGGER,
+                        ExternalCode.T_JAVA_LOGCONFIG_CODE,
+                        jobPath -> LoggerInjector.planItemFile(jobPath, ExternalCode.T_JAVA_LOGCONFIG_CODE));
+                    break;
+                case "--plan-status":
+                    success = plan(itemPath, args.length > 2 ? args[2] : null, RunManifest.MODE_STATUS,
+                        ExternalCode.T_JAVA_ROW_STATUS_CODE, StatusInjector::planServiceFile);
+                    break;
+                case "--rules":
+                    success = applyRules(itemPath, args[2], journal);
+                    break;
+                case "--apply":
+                    success = apply(itemPath, journal);
+                    break;
+                case "--watch":
+                    success = watch(itemPath);
+                    break;
+                case "--audit":
+                    success = audit(itemPath, args.length > 2 ? args[2] : null);
+                    break;
+                case "--generate":
+                    success = generate(itemPath, Arrays.asList(args).subList(2, args.length));
+                    break;
+                default:
+                    showUsage("Invalid flag: " + flag);
+                    return EXIT_USAGE;
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            success = false;
+        }
+
+        RunManifest.getDefault().save();
+        ItemCatalog.getDefault().save();
+        WorkspaceIndex.saveAll();
+        journal.finish(success);
+
+        if (reportFile != null) {
+            success &= writeReport(reportFile, flag, startedAt, System.nanoTime() - start);
+        }
+        return success ? EXIT_OK : EXIT_FAILED;
+    }
+
+    private static boolean writeReport(String reportFile, String flag, Instant startedAt, long wallNanos) {
+        try {
+            RunReport.write(Paths.get(reportFile), flag, startedAt, wallNanos);
+            System.out.println("Run report written to: " + reportFile);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static boolean runBatch(String workspaceDir, BatchRunner.ItemTask task, RunJournal journal) {
+        try {
+            return allSucceeded(BatchRunner.run(BatchRunner.findProcessItems(Paths.get(workspaceDir)), task,
+                journal));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static boolean allSucceeded(List<BatchRunner.ItemResult> results) {
+        return results.stream().allMatch(BatchRunner.ItemResult::isSuccess);
+    }
+
+    private static boolean logRoutes(List<String> routeArguments, RunJournal journal) {
+        try {
+            return allSucceeded(LoggerInjector.injectLoggerCodeToAllJobsOfRoutes(
+                BatchRunner.findItems(routeArguments), ExternalCode.T_JAVA_LOGCONFIG_CODE, journal));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static boolean plan(String workspaceDir, String planFile, String mode, String snippet,
+                                ChangePlan.ItemPlanner planner) {
+        try {
+            ChangePlan plan = ChangePlan.create(BatchRunner.findProcessItems(Paths.get(workspaceDir)),
+                mode, snippet, planner);
+            plan.print();
+            if (planFile != null) {
+                plan.save(Paths.get(planFile));
+                System.out.println("Plan saved to: " + planFile);
+            }
+            return plan.getFailedItems().isEmpty();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static boolean applyRules(String rulesFile, String target, RunJournal journal) {
+        try {
+            InjectionRules rules = InjectionRules.load(Paths.get(rulesFile));
+            Path targetPath = Paths.get(target);
+            List<Path> items = Files.isDirectory(targetPath)
+                ? BatchRunner.findProcessItems(targetPath)
+                : BatchRunner.findItems(List.of(target));
+            return allSucceeded(BatchRunner.run(items, rules::processItemFile, journal));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static boolean apply(String planFile, RunJournal journal) {
+        try {
+            return allSucceeded(ChangePlan.load(Paths.get(planFile)).apply(journal));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static boolean watch(String workspaceDir) {
+        try {
+            WorkspaceWatcher.watch(Paths.get(workspaceDir));
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static boolean audit(String workspaceDir, String reportFile) {
+        try {
+            WorkspaceAudit.Report report = WorkspaceAudit.audit(Paths.get(workspaceDir));
+            report.print();
+            if (reportFile != null) {
+                report.write(Paths.get(reportFile));
+                System.out.println("Audit report written to: " + reportFile);
+            }
+            return report.getFindings().stream()
+                .allMatch(finding -> finding.getStatus() == WorkspaceAudit.Status.OK);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
 
-        switch (flag) {
-            case "--status-svc":
-                StatusInjector.injectStatusToService(itemPath);
-                break;
-            case "--log-route":
-                LoggerInjector.injectLoggerCodeToAllJobsOfRoute(itemPath,
-                    ExternalCode.T_JAVA_LOGCONFIG_CODE);
-                break;
-            case "--log-item":
-                LoggerInjector.injectLoggerCodeToItem(itemPath,
-                    ExternalCode.T_JAVA_LOGCONFIG_CODE);
-                break;
-            default:
-                showUsage("Invalid flag: " + flag);
-                break;
+    private static boolean generate(String projectDir, List<String> settingArguments) {
+        try {
+            WorkspaceGenerator.Settings settings = WorkspaceGenerator.Settings.parse(settingArguments);
+            int items = WorkspaceGenerator.generate(Paths.get(projectDir), settings);
+            System.out.println("Generated " + items + " item(s) in " + projectDir + " (" + settings + ")");
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
         }
     }
 
@@ -40,7 +281,37 @@ public class Main {
             "Injects status handling into the specified service.");
         System.out.println("  --log-route <itemPath>   " +
             "Injects logging code into the main item(s) of the specified route.");
+        System.out.println("  --log-routes <route | glob | listFile> ...    " +
+            "Injects logging code into the jobs of many routes; shared jobs are written once, in parallel.");
         System.out.println("  --log-item <itemPath>    " +
             "Injects logging code into the specified item");
+        System.out.println("  --status-all <workspaceDir>    " +
+            "Injects status handling into all services of the workspace in parallel.");
+        System.out.println("  --log-all <workspaceDir>    " +
+            "Injects logging code into all job items of the workspace in parallel.");
+        System.out.println("  --plan-status <workspaceDir> [planFile]    " +
+            "Shows (and optionally saves) the status changes for the workspace without applying them.");
+        System.out.println("  --plan-log <workspaceDir> [planFile]    " +
+            "Shows (and optionally saves) the logging changes for the workspace without applying them.");
+        System.out.println("  --rules <rulesFile> <workspaceDir | itemPath>    " +
+            "Applies the injection rules of a rule file to all items of the workspace in parallel, or to one item.");
+        System.out.println("  --apply <planFile>    " +
+            "Applies a saved plan in parallel; items changed since planning are rejected.");
+        System.out.println("  --watch <workspaceDir>    " +
+            "Keeps injecting into new or changed items: logging into jobs of routes, status into services.");
+        System.out.println("  --audit <workspaceDir> [reportFile]    " +
+            "Checks status endpoints, logger configuration and Latest versions without changing anything; " +
+            "writes the findings as CSV (*.csv) or JSON, and fails if any check does not hold.");
+        System.out.println("  --generate <projectDir> [key=value ...]    " +
+            "Generates a synthetic project; keys: jobs, versions, nodes, connections, services, routes, refs, seed.");
+        System.out.println("  --daemon    " +
+            "Keeps running and executes one command per line of standard input, keeping caches warm; " +
+            "every command is answered with a line '" + Daemon.STATUS_PREFIX + "<exit status>'.");
+        System.out.println("  --report <file.json>    " +
+            "Can be added to any command; writes the per-phase timings, byte counts and latency " +
+            "percentiles of the run as JSON.");
+        System.out.println("  --resume    " +
+            "Can be added to " + String.join(", ", new TreeSet<>(JOURNALED_FLAGS)) + "; continues an interrupted " +
+            "run of the same command from its journal, skipping the items it completed.");
     }
 }
@@ -0,0 +1,291 @@
+package talend.modifier;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.util.*;
+
+/**
+ * Indexed view of the components and connections of a loaded item.
+ * <p>
+ * The model scans the document once and indexes nodes by their UNIQUE_NAME and component name,
+ * connections by label, source and target, and the metadata of every node by connector. All lists
+ * keep document order, so the first entry of a lookup is the element a scan of the document would find
+ * first. Elements must be appended through the model (or registered with it) to keep it in sync with the
+ * document.
+ * <p>
+ * The model also tracks which top-level elements of the document have been appended or modified since it
+ * was built, which allows {@link SpliceWriter} to rewrite only those parts of the item. Any change made to an
+ * existing element directly has to be reported with {@link #markModified(Element)}.
+ */
+public class ProcessModel {
+
+    private final Document doc;
+    private final Map<String, List<Element>> nodesByUniqueName = new HashMap<>();
+    private final Map<String, Element> nodesByTextUniqueName = new HashMap<>();
+    private final Map<String, List<Element>> nodesByComponentName = new HashMap<>();
+    private final Map<Element, String> textUniqueNamesByNode = new IdentityHashMap<>();
+    private final Map<Element, Map<String, List<Element>>> metadataByNodeAndConnector = new IdentityHashMap<>();
+    private final List<Element> connections = new ArrayList<>();
+    private final Map<String, List<Element>> connectionsByLabel = new HashMap<>();
+    private final Map<String, List<Element>> connectionsBySource = new HashMap<>();
+    private final Map<String, List<Element>> connectionsByTarget = new HashMap<>();
+    private final List<Element> originalTopLevelElements = new ArrayList<>();
+    private final Set<Element> modifiedTopLevelElements = new LinkedHashSet<>();
+    private final List<Element> appendedElements = new ArrayList<>();
+    private ConnectionGraph connectionGraph;
+
+    private ProcessModel(Document doc) {
+        this.doc = doc;
+        reindex();
+
+        for (Node child = doc.getDocumentElement().getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                originalTopLevelElements.add((Element) child);
+            }
+        }
+    }
+
+    /**
+     * Builds the model of the given document.
+     *
+     * @param doc the loaded item
+     * @return the indexed model of the document
+     */
+    public static ProcessModel of(Document doc) {
+        return new ProcessModel(doc);
+    }
+
+    public Document getDocument() {
+        return doc;
+    }
+
+    /**
+     * Rebuilds all indexes from the document, e.g. after the document has been changed directly.
+     */
+    public void reindex() {
+        nodesByUniqueName.clear();
+        nodesByTextUniqueName.clear();
+        nodesByComponentName.clear();
+        textUniqueNamesByNode.clear();
+        metadataByNodeAndConnector.clear();
+        connections.clear();
+        connectionsByLabel.clear();
+        connectionsBySource.clear();
+        connectionsByTarget.clear();
+        connectionGraph = null;
+
+        NodeList nodes = doc.getElementsByTagName("node");
+        for (int i = 0; i < nodes.getLength(); i++) {
+            indexNode((Element) nodes.item(i));
+        }
+        NodeList connectionList = doc.getElementsByTagName("connection");
+        for (int i = 0; i < connectionList.getLength(); i++) {
+            indexConnection((Element) connectionList.item(i));
+        }
+    }
+
+    /**
+     * Appends a new node to the root element of the document and indexes it.
+     *
+     * @param node the node to append
+     */
+    public void appendNode(Element node) {
+        doc.getDocumentElement().appendChild(node);
+        appendedElements.add(node);
+        indexNode(node);
+    }
+
+    /**
+     * Appends a new connection to the root element of the document and indexes it.
+     *
+     * @param connection the connection to append
+     */
+    public void appendConnection(Element connection) {
+        doc.getDocumentElement().appendChild(connection);
+        appendedElements.add(connection);
+        indexConnection(connection);
+    }
+
+    /**
+     * Appends a new metadata element to an indexed node and indexes it.
+     *
+     * @param node     the node receiving the metadata
+     * @param metadata the metadata to append
+     */
+    public void appendMetadata(Element node, Element metadata) {
+        node.appendChild(metadata);
+        markModified(node);
+        indexMetadata(node, metadata);
+    }
+
+    /**
+     * Reports a change of an existing element, e.g. an updated attribute or an appended child.
+     *
+     * @param element the changed element or any of its descendants
+     */
+    public void markModified(Element element) {
+        Element root = doc.getDocumentElement();
+        Node current = element;
+        while (current != null && current.getParentNode() != root) {
+            current = current.getParentNode();
+        }
+        if (current != null && !appendedElements.contains(current)) {
+            modifiedTopLevelElements.add((Element) current);
+        }
+    }
+
+    /**
+     * @return the element children of the root as they were when the model was built, in document order
+     */
+    public List<Element> getOriginalTopLevelElements() {
+        return Collections.unmodifiableList(originalTopLevelElements);
+    }
+
+    /**
+     * @return the top-level elements that existed when the model was built and have been modified since
+     */
+    public Set<Element> getModifiedTopLevelElements() {
+        return Collections.unmodifiableSet(modifiedTopLevelElements);
+    }
+
+    /**
+     * @return the elements appended to the root through the model, in document order
+     */
+    public List<Element> getAppendedElements() {
+        return Collections.unmodifiableList(appendedElements);
+    }
+
+    /**
+     * @return {@code true} if elements have been appended or modified since the model was built
+     */
+    public boolean isModified() {
+        return !appendedElements.isEmpty() || !modifiedTopLevelElements.isEmpty();
+    }
+
+    /**
+     * @param uniqueName the value of a UNIQUE_NAME parameter
+     * @return {@code true} if any node has a UNIQUE_NAME parameter with the given value
+     */
+    public boolean hasNodeWithUniqueName(String uniqueName) {
+        return nodesByUniqueName.containsKey(uniqueName);
+    }
+
+    /**
+     * @param uniqueName the value of a UNIQUE_NAME parameter
+     * @return all nodes having a UNIQUE_NAME parameter with the given value, in document order
+     */
+    public List<Element> getNodesByUniqueName(String uniqueName) {
+        return nodesByUniqueName.getOrDefault(uniqueName, Collections.emptyList());
+    }
+
+    /**
+     * @param uniqueName the value of a TEXT UNIQUE_NAME parameter
+     * @return the first node having a TEXT UNIQUE_NAME parameter with the given value
+     */
+    public Optional<Element> findNodeByTextUniqueName(String uniqueName) {
+        return Optional.ofNullable(nodesByTextUniqueName.get(uniqueName));
+    }
+
+    /**
+     * @param componentName the component type, e.g. {@code tJava}
+     * @return all nodes of the given component type, in document order
+     */
+    public List<Element> getNodesByComponentName(String componentName) {
+        return nodesByComponentName.getOrDefault(componentName, Collections.emptyList());
+    }
+
+    /**
+     * @param node an indexed node
+     * @return the value of the first TEXT UNIQUE_NAME parameter of the node
+     */
+    public Optional<String> getTextUniqueName(Element node) {
+        return Optional.ofNullable(textUniqueNamesByNode.get(node));
+    }
+
+    /**
+     * @param node      an indexed node
+     * @param connector the connector of the metadata, e.g. {@code FLOW}
+     * @return the metadata elements of the node with the given connector, in document order
+     */
+    public List<Element> getMetadata(Element node, String connector) {
+        return metadataByNodeAndConnector.getOrDefault(node, Collections.emptyMap())
+            .getOrDefault(connector, Collections.emptyList());
+    }
+
+    /**
+     * @return all connections, in document order
+     */
+    public List<Element> getConnections() {
+        return Collections.unmodifiableList(connections);
+    }
+
+    /**
+     * @return the graph of all connections; it is built on first use and kept until a connection is added, so
+     *     reachability computed for one query is reused by the next ones
+     */
+    public ConnectionGraph getConnectionGraph() {
+        if (connectionGraph == null) {
+            connectionGraph = ConnectionGraph.of(connections);
+        }
+        return connectionGraph;
+    }
+
+    public List<Element> getConnectionsByLabel(String label) {
+        return connectionsByLabel.getOrDefault(label, Collections.emptyList());
+    }
+
+    public List<Element> getConnectionsBySource(String source) {
+        return connectionsBySource.getOrDefault(source, Collections.emptyList());
+    }
+
+    public List<Element> getConnectionsByTarget(String target) {
+        return connectionsByTarget.getOrDefault(target, Collections.emptyList());
+    }
+
+    private void indexNode(Element node) {
+        nodesByComponentName.computeIfAbsent(node.getAttribute("componentName"), k -> new ArrayList<>())
+            .add(node);
+
+        NodeList params = node.getElementsByTagName("elementParameter");
+        for (int i = 0; i < params.getLength(); i++) {
+            Element param = (Element) params.item(i);
+            if (!"UNIQUE_NAME".equals(param.getAttribute("name"))) {
+                continue;
+            }
+            String value = param.getAttribute("value");
+            List<Element> nodes = nodesByUniqueName.computeIfAbsent(value, k -> new ArrayList<>());
+            if (nodes.isEmpty() || nodes.get(nodes.size() - 1) != node) {
+                nodes.add(node);
+            }
+            if ("TEXT".equals(param.getAttribute("field"))) {
+                nodesByTextUniqueName.putIfAbsent(value, node);
+                textUniqueNamesByNode.putIfAbsent(node, value);
+            }
+        }
+
+        NodeList metadataList = node.getElementsByTagName("metadata");
+        for (int i = 0; i < metadataList.getLength(); i++) {
+            indexMetadata(node, (Element) metadataList.item(i));
+        }
+    }
+
+    private void indexMetadata(Element node, Element metadata) {
+        metadataByNodeAndConnector.computeIfAbsent(node, k -> new HashMap<>())
+            .computeIfAbsent(metadata.getAttribute("connector"), k -> new ArrayList<>())
+            .add(metadata);
+    }
+
+    private void indexConnection(Element connection) {
+        connections.add(connection);
+        connectionGraph = null;
+        connectionsByLabel.computeIfAbsent(connection.getAttribute("label"), k -> new ArrayList<>())
+            .add(connection);
+        connectionsBySource.computeIfAbsent(connection.getAttribute("source"), k -> new ArrayList<>())
+            .add(connection);
+        connectionsByTarget.computeIfAbsent(connection.getAttribute("target"), k -> new ArrayList<>())
+            .add(connection);
+    }
+}
@@ -1,65 +1,134 @@
 package talend.modifier;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class RouteItemHelper {
 
+    private static final Map<Path, RouteJobs> ROUTE_JOBS_CACHE = new ConcurrentHashMap<>();
+
+    private static final class RouteJobs {
+        private final long size;
+        private final long lastModified;
+        private final List<JobRef> references;
+
+        private RouteJobs(long size, long lastModified, List<JobRef> references) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.references = references;
+        }
+    }
+
     public static Map<String, String> getJobNamesAndVersionsByRouteItemPath(String routeItemPath) throws Exception {
-        Document doc = FileHelper.loadDocument(routeItemPath);
-        NodeList nodes = doc.getElementsByTagName("node");
         Map<String, String> jobNamesAndVersions = new HashMap<>();
 
-        for (int i = 0; i < nodes.getLength(); i++) {
-            Element node = (Element) nodes.item(i);
-            if ("cTalendJob".equals(node.getAttribute("componentName"))) {
-
-                String jobName = TalendComponentsHelper.getParameterValue(node, "SELECTED_JOB_NAME")
-                    .orElseThrow(() -> new IllegalStateException("Job name not found"));
-                String jobVersion = TalendComponentsHelper.getParameterValue(node,
-                    "SELECTED_JOB_NAME:PROCESS_TYPE_VERSION")
-                    .orElseThrow(() -> new IllegalStateException("Job version not found"));
-
-                if ("Latest".equalsIgnoreCase(jobVersion)) {
-                    File routeFile = new File(routeItemPath).getCanonicalFile();
-                    jobVersion = LatestVersionResolver.findLatestVersion(
-                        FileHelper.resolveSubdirectoryUpwards(routeFile, "process")
-                            .orElseThrow(
-                                () -> new IOException("Directory process not found upwards from: " +
-                                    routeFile.getAbsolutePath())
-                            ),
-                        jobName
-                    ).orElseThrow(() -> new IOException("Job version not resolved"));
-                }
-
-                if (!jobName.isBlank() && !jobVersion.isBlank()) {
-                    jobNamesAndVersions.put(jobName, jobVersion);
-                }
+        for (JobRef job : getJobReferencesByRouteItemPath(routeItemPath)) {
+            String jobVersion = job.getVersion();
+            if (job.isLatest()) {
+                jobVersion = getWorkspaceIndex(routeItemPath).findLatestVersion(job.getJobName())
+                    .orElseThrow(() -> new IOException("Job version not resolved"));
+            }
+
+            if (!jobVersion.isBlank()) {
+                jobNamesAndVersions.put(job.getJobName(), jobVersion);
             }
         }
         return jobNamesAndVersions;
     }
 
+    /**
+     * Finds the jobs referenced by the cTalendJob components of a route. The result is memoized per route
+     * for the lifetime of the JVM, as long as the size and modification time of the route do not change.
+     *
+     * @param routeItemPath the route item
+     * @return the distinct references in document order; versions may be {@link JobRef#LATEST}
+     * @throws Exception if the route cannot be read or a cTalendJob has no job name or version
+     */
+    public static List<JobRef> getJobReferencesByRouteItemPath(String routeItemPath) throws Exception {
+        Path path = Paths.get(routeItemPath).toAbsolutePath().normalize();
+        long size = Files.size(path);
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+
+        RouteJobs cached = ROUTE_JOBS_CACHE.get(path);
+        if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+            return cached.references;
+        }
+
+        List<JobRef> references = Collections.unmodifiableList(readJobReferences(routeItemPath));
+        ROUTE_JOBS_CACHE.put(path, new RouteJobs(size, lastModified, references));
+        return references;
+    }
+
+    /**
+     * Drops all memoized route references.
+     */
+    public static void clearCache() {
+        ROUTE_JOBS_CACHE.clear();
+    }
+
+    private static List<JobRef> readJobReferences(String routeItemPath) throws Exception {
+        if (!ItemPrefilter.mayReferenceJobs(Paths.get(routeItemPath))) {
+            return new ArrayList<>();
+        }
+
+        Set<JobRef> jobs = new LinkedHashSet<>();
+        ItemSummary summary = ItemCatalog.getDefault().getSummary(Paths.get(routeItemPath));
+
+        for (ItemSummary.NodeSummary node : summary.getNodesByComponentName("cTalendJob")) {
+            String jobName = node.getParameterValue("SELECTED_JOB_NAME")
+                .orElseThrow(() -> new IllegalStateException("Job name not found"));
+            String jobVersion = node.getParameterValue("SELECTED_JOB_NAME:PROCESS_TYPE_VERSION")
+                .orElseThrow(() -> new IllegalStateException("Job version not found"));
+
+            if (!jobName.isBlank() && !jobVersion.isBlank()) {
+                jobs.add(new JobRef(jobName, jobVersion));
+            }
+        }
+        return new ArrayList<>(jobs);
+    }
+
+    /**
+     * Resolves every job a route depends on: the jobs of its cTalendJob components and, transitively, the
+     * child jobs they start through tRunJob.
+     *
+     * @param routeItemPath the route item
+     * @return the resolved jobs (with concrete versions) and their items, each job version once
+     * @throws Exception if the route or a job cannot be read, or a referenced job does not exist
+     */
+    public static Map<JobRef, File> resolveJobItemsByRouteItemPath(String routeItemPath) throws Exception {
+        List<JobRef> jobs = getJobReferencesByRouteItemPath(routeItemPath);
+        if (jobs.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+        return JobDependencies.resolveClosure(getWorkspaceIndex(routeItemPath), jobs);
+    }
+
     public static String buildJobFilePathByRouteItemPath(String routeItemPath, String jobName, String version)
         throws IOException {
-        File routeFile = new File(routeItemPath).getCanonicalFile();
-        File processDir = FileHelper.resolveSubdirectoryUpwards(routeFile, "process")
-            .orElseThrow(
-                () -> new IOException("Directory process not found upwards from: " + routeFile.getAbsolutePath())
-            );
+        WorkspaceIndex index = getWorkspaceIndex(routeItemPath);
 
         String targetName = jobName + "_" + version + ".item";
-        File jobFile = FileHelper.findFileInDirectory(processDir, targetName)
+        File jobFile = index.findItem(targetName)
             .orElseThrow(
-                () -> new IOException("Job file not found: " + targetName + " under " + processDir.getAbsolutePath())
+                () -> new IOException("Job file not found: " + targetName + " under " +
+                    index.getProcessDir().getAbsolutePath())
             );
 
         return jobFile.getAbsolutePath();
 
     }
+
+    public static WorkspaceIndex getWorkspaceIndex(String routeItemPath) throws IOException {
+        File routeFile = new File(routeItemPath).getCanonicalFile();
+        File processDir = FileHelper.resolveSubdirectoryUpwards(routeFile, "process")
+            .orElseThrow(
+                () -> new IOException("Directory process not found upwards from: " + routeFile.getAbsolutePath())
+            );
+        return WorkspaceIndex.forProcessDirectory(processDir);
+    }
 }
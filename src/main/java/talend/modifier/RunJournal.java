@@ -0,0 +1,165 @@
+package talend.modifier;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Append-only journal of the items completed by a batch run, so an interrupted run can be resumed.
+ * <p>
+ * Every item is appended as soon as its task has succeeded, i.e. after the item has been replaced atomically,
+ * so the journal never lists an item that is only half written. An item that was written but not yet
+ * journaled when the run died is simply processed again on resume; the injections leave finished items
+ * unchanged. The journal is written without forcing it to disk: it survives the death of the process (out of
+ * memory, killed by a timeout), not of the machine.
+ * <p>
+ * The journal of a command line is stored in the {@linkplain FileHelper#getCacheDirectory() cache directory}
+ * and deleted once a run of that command has succeeded for all items. Setting the {@code modifier.journal}
+ * system property to {@code false} disables it.
+ */
+public class RunJournal {
+
+    private static final String JOURNAL_HEADER = "# talendJobModifier run journal v1";
+
+    private final Path file;
+    private final Set<Path> completedItems;
+    private FileChannel channel;
+
+    private RunJournal(Path file, Set<Path> completedItems) {
+        this.file = file;
+        this.completedItems = completedItems;
+    }
+
+    /**
+     * @return a journal that records nothing and reports no item as completed
+     */
+    public static RunJournal disabled() {
+        return new RunJournal(null, Set.of());
+    }
+
+    /**
+     * Opens the journal of a command line.
+     *
+     * @param arguments the command line of the run
+     * @param resume    {@code true} to keep the items completed by an interrupted run of the same command line,
+     *                  {@code false} to start over
+     * @return the journal of the command line
+     * @throws IOException if the journal cannot be read or created
+     */
+    public static RunJournal open(List<String> arguments, boolean resume) throws IOException {
+        if ("false".equalsIgnoreCase(System.getProperty("modifier.journal"))) {
+            if (resume) {
+                System.out.println("The run journal is disabled; processing all items.");
+            }
+            return disabled();
+        }
+
+        // Relative paths of the command line depend on the working directory, so it is part of the command
+        String command = Paths.get("").toAbsolutePath() + "\t" + String.join("\t", arguments);
+        Path file = FileHelper.getCacheDirectory().resolve("journals")
+            .resolve(RunManifest.hash(command.getBytes(StandardCharsets.UTF_8)) + ".journal");
+
+        Set<Path> completedItems = new HashSet<>();
+        if (resume) {
+            if (!load(file, command, completedItems)) {
+                System.out.println("No interrupted run to resume; processing all items.");
+            }
+        } else if (Files.isRegularFile(file)) {
+            System.out.println("Discarding the journal of an interrupted run; use --resume to continue it instead.");
+        }
+
+        RunJournal journal = new RunJournal(file, completedItems);
+        Files.createDirectories(file.getParent());
+        if (completedItems.isEmpty()) {
+            journal.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+            journal.append(JOURNAL_HEADER + "\n" + command.replace('\n', ' ') + "\n");
+        } else {
+            journal.channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return journal;
+    }
+
+    /**
+     * Reads the items completed by a run of the same command. A last line without line break was cut off by the
+     * interruption and is ignored.
+     *
+     * @return {@code true} if the file is the journal of the command
+     */
+    private static boolean load(Path file, String command, Set<Path> completedItems) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        String[] lines = content.split("\n", -1);
+        if (lines.length < 3 || !JOURNAL_HEADER.equals(lines[0]) || !command.replace('\n', ' ').equals(lines[1])) {
+            return false;
+        }
+        for (int i = 2; i < lines.length - 1; i++) {
+            if (!lines[i].isEmpty()) {
+                completedItems.add(Paths.get(lines[i]));
+            }
+        }
+        System.out.println("Resuming from " + file + ": " + completedItems.size() + " item(s) already completed.");
+        return true;
+    }
+
+    /**
+     * @param itemPath an item of the run
+     * @return {@code true} if the item has been completed by the interrupted run being resumed
+     */
+    public boolean isCompleted(Path itemPath) {
+        return completedItems.contains(itemPath.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Appends an item whose task has succeeded.
+     *
+     * @param itemPath the completed item
+     * @throws IOException if the journal cannot be written
+     */
+    public void complete(String itemPath) throws IOException {
+        if (file != null) {
+            append(Paths.get(itemPath).toAbsolutePath().normalize() + "\n");
+        }
+    }
+
+    private synchronized void append(String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Closes the journal at the end of the run. The journal is deleted if all items succeeded and kept for
+     * {@code --resume} otherwise.
+     *
+     * @param success {@code true} if the run succeeded for all items
+     */
+    public void finish(boolean success) {
+        if (file == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+            if (success) {
+                Files.deleteIfExists(file);
+            } else {
+                System.out.println("Run journal kept for --resume: " + file);
+            }
+        } catch (IOException e) {
+            System.out.println("Unable to close run journal " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package talend.modifier;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Manifest of the items processed by previous runs.
+ * <p>
+ * For every item and mode the manifest records the size, modification time and content hash of the item as
+ * it was left by the run, together with the hash of the injected code snippet. An item whose content and
+ * snippet are unchanged since then is already in its final state and can be skipped without parsing it.
+ * The size and modification time are only a shortcut; when they differ, the content hash decides.
+ * <p>
+ * The manifest is stored in the {@linkplain FileHelper#getCacheDirectory() cache directory} unless the
+ * {@code modifier.manifest} system property names another file. Setting it to {@code false} disables it.
+ */
+public class RunManifest {
+
+    public static final String MODE_LOGGER = "log";
+    public static final String MODE_STATUS = "status";
+
+    private static final String MANIFEST_HEADER = "# talendJobModifier run manifest v1";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static volatile RunManifest defaultManifest;
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean modified;
+
+    private static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String contentHash;
+        private final String snippetHash;
+
+        Entry(long size, long lastModified, String contentHash, String snippetHash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+            this.snippetHash = snippetHash;
+        }
+    }
+
+    private RunManifest(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the manifest of this run, loading it on first use.
+     *
+     * @return the manifest; a disabled manifest never reports items as up to date and records nothing
+     */
+    public static RunManifest getDefault() {
+        if (defaultManifest == null) {
+            synchronized (RunManifest.class) {
+                if (defaultManifest == null) {
+                    String location = System.getProperty("modifier.manifest");
+                    if ("false".equalsIgnoreCase(location)) {
+                        defaultManifest = new RunManifest(null);
+                    } else {
+                        defaultManifest = load(location == null
+                            ? FileHelper.getCacheDirectory().resolve("manifest.txt")
+                            : Paths.get(location));
+                    }
+                }
+            }
+        }
+        return defaultManifest;
+    }
+
+    /**
+     * Determines whether the item is still in the state a previous run left it in for the same mode and
+     * snippet.
+     *
+     * @param itemPath the path of the item
+     * @param mode     the injection mode, e.g. {@link #MODE_LOGGER}
+     * @param snippet  the code injected by the mode
+     * @return {@code true} if the item does not need to be processed again
+     * @throws IOException if the item cannot be read
+     */
+    public boolean isUpToDate(String itemPath, String mode, String snippet) throws IOException {
+        try (RunMetrics.Timer timer = RunMetrics.time(RunMetrics.Phase.CHECK)) {
+            if (file == null) {
+                return false;
+            }
+
+            Path item = Paths.get(itemPath).toAbsolutePath().normalize();
+            Entry entry = entries.get(key(item, mode));
+            if (entry == null || !entry.snippetHash.equals(hash(snippet.getBytes(StandardCharsets.UTF_8)))) {
+                return false;
+            }
+
+            long size = Files.size(item);
+            if (size != entry.size) {
+                return false;
+            }
+            if (Files.getLastModifiedTime(item).toMillis() == entry.lastModified) {
+                return true;
+            }
+            timer.read(size);
+            return entry.contentHash.equals(hashFile(item));
+        }
+    }
+
+    /**
+     * Records the current state of an item after it has been processed, reading the item to hash its content.
+     *
+     * @param itemPath the path of the item
+     * @param mode     the injection mode, e.g. {@link #MODE_LOGGER}
+     * @param snippet  the code injected by the mode
+     * @throws IOException if the item cannot be read
+     */
+    public void record(String itemPath, String mode, String snippet) throws IOException {
+        if (file != null) {
+            record(itemPath, mode, snippet, hashFile(Paths.get(itemPath)));
+        }
+    }
+
+    /**
+     * Records the current state of an item after it has been processed, with a content hash known to the caller:
+     * the hash of the bytes just written, or the hash of the catalog record the item was processed from if it
+     * was not changed.
+     *
+     * @param itemPath    the path of the item
+     * @param mode        the injection mode, e.g. {@link #MODE_LOGGER}
+     * @param snippet     the code injected by the mode
+     * @param contentHash the current content hash of the item, see {@link #hash(byte[])}
+     * @throws IOException if the size or modification time of the item cannot be read
+     */
+    public void record(String itemPath, String mode, String snippet, String contentHash) throws IOException {
+        if (file == null) {
+            return;
+        }
+
+        Path item = Paths.get(itemPath).toAbsolutePath().normalize();
+        entries.put(key(item, mode), new Entry(
+            Files.size(item),
+            Files.getLastModifiedTime(item).toMillis(),
+            contentHash,
+            hash(snippet.getBytes(StandardCharsets.UTF_8))
+        ));
+        modified = true;
+    }
+
+    /**
+     * Writes the manifest if anything has been recorded since it was loaded.
+     */
+    public void save() {
+        if (file == null || !modified) {
+            return;
+        }
+
+        try {
+            FileHelper.writeAtomically(file, tempFile -> {
+                try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                    writer.write(MANIFEST_HEADER);
+                    writer.newLine();
+                    for (Map.Entry<String, Entry> entry : new TreeMap<>(entries).entrySet()) {
+                        Entry value = entry.getValue();
+                        writer.write(value.size + "\t" + value.lastModified + "\t" + value.contentHash + "\t" +
+                            value.snippetHash + "\t" + entry.getKey());
+                        writer.newLine();
+                    }
+                }
+            });
+            modified = false;
+        } catch (IOException e) {
+            System.out.println("Unable to store run manifest " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static RunManifest load(Path file) {
+        RunManifest manifest = new RunManifest(file);
+        if (!Files.isRegularFile(file)) {
+            return manifest;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!MANIFEST_HEADER.equals(reader.readLine())) {
+                return manifest;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 5);
+                if (fields.length == 5) {
+                    manifest.entries.put(fields[4], new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                        fields[2], fields[3]));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            manifest.entries.clear();
+        }
+        return manifest;
+    }
+
+    private static String key(Path item, String mode) {
+        return mode + "\t" + item;
+    }
+
+    /**
+     * Computes the SHA-256 hash of a file.
+     *
+     * @param file the file to hash
+     * @return the hash as lower-case hex string
+     * @throws IOException if the file cannot be read
+     */
+    public static String hashFile(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Computes the SHA-256 hash of the given bytes.
+     *
+     * @param content the bytes to hash
+     * @return the hash as lower-case hex string
+     */
+    public static String hash(byte[] content) {
+        return toHex(newDigest().digest(content));
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
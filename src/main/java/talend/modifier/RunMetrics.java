@@ -0,0 +1,351 @@
+package talend.modifier;
+
+import jdk.jfr.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timing instrumentation of the phases of a run.
+ * <p>
+ * Every phase is measured with a {@link Timer} (or {@link #time(Phase, PhaseTask)} for a phase without byte
+ * counts), which adds the elapsed time and the bytes read or written to
+ * the totals of the run and to the item currently processed by the thread (see
+ * {@link #measureItem(String, BatchRunner.ItemTask)}), and emits a {@code talend.modifier.Phase} JFR event.
+ * Processed items emit a {@code talend.modifier.Item} event. The JFR events only cost anything while a
+ * recording is running, e.g. with {@code -XX:StartFlightRecording}. Nested timers of the same phase are
+ * counted once.
+ */
+public class RunMetrics {
+
+    /**
+     * The measured phases of a run.
+     */
+    public enum Phase {
+        /**
+         * Walking directories, e.g. finding the items of a workspace or building the workspace index.
+         */
+        WALK,
+        /**
+         * Resolving the latest versions of jobs.
+         */
+        RESOLVE,
+        /**
+         * Cheap checks deciding whether an item has to be parsed at all (run manifest, prefilter).
+         */
+        CHECK,
+        /**
+         * Parsing an item into a document, or reading its {@link ItemSummary}.
+         */
+        PARSE,
+        /**
+         * Performing the actions of an injection on the in-memory item.
+         */
+        MUTATE,
+        /**
+         * Serializing and writing an item.
+         */
+        SERIALIZE
+    }
+
+    @Name("talend.modifier.Phase")
+    @Label("Modifier Phase")
+    @Category("talendJobModifier")
+    @StackTrace(false)
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Item")
+        String item;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+    }
+
+    @Name("talend.modifier.Item")
+    @Label("Modifier Item")
+    @Category("talendJobModifier")
+    @StackTrace(false)
+    static class ItemEvent extends Event {
+        @Label("Item")
+        String item;
+
+        @Label("Success")
+        boolean success;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+    }
+
+    /**
+     * Measurements of a single processed item.
+     */
+    public static class ItemMetrics {
+        private final String itemPath;
+        private final long[] phaseNanos = new long[Phase.values().length];
+        private long bytesRead;
+        private long bytesWritten;
+        private long elapsedNanos;
+        private String error;
+
+        ItemMetrics(String itemPath) {
+            this.itemPath = itemPath;
+        }
+
+        public String getItemPath() {
+            return itemPath;
+        }
+
+        public long getPhaseNanos(Phase phase) {
+            return phaseNanos[phase.ordinal()];
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return the failure of the item, or {@code null} if it succeeded
+         */
+        public String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Measures one execution of a phase; close it when the phase ends.
+     */
+    public static final class Timer implements AutoCloseable {
+        private final Phase phase;
+        private final boolean nested;
+        private final long start;
+        private final PhaseEvent event;
+        private long bytesRead;
+        private long bytesWritten;
+
+        private Timer(Phase phase, boolean nested) {
+            this.phase = phase;
+            this.nested = nested;
+            this.event = nested ? null : new PhaseEvent();
+            if (event != null) {
+                event.begin();
+            }
+            this.start = System.nanoTime();
+        }
+
+        public Timer read(long bytes) {
+            bytesRead += bytes;
+            return this;
+        }
+
+        public Timer written(long bytes) {
+            bytesWritten += bytes;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (nested) {
+                // The enclosing timer of the same phase accounts for the time; only the bytes are added.
+                addBytes(bytesRead, bytesWritten);
+                return;
+            }
+            long elapsed = System.nanoTime() - start;
+            ACTIVE_PHASES.get().remove(phase);
+
+            PHASE_NANOS[phase.ordinal()].add(elapsed);
+            PHASE_COUNTS[phase.ordinal()].increment();
+            addBytes(bytesRead, bytesWritten);
+            ItemMetrics item = CURRENT_ITEM.get();
+            if (item != null) {
+                item.phaseNanos[phase.ordinal()] += elapsed;
+            }
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = phase.name();
+                event.item = item == null ? null : item.itemPath;
+                event.bytesRead = bytesRead;
+                event.bytesWritten = bytesWritten;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * The work of a phase measured with {@link #time(Phase, PhaseTask)}.
+     */
+    @FunctionalInterface
+    public interface PhaseTask<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    /**
+     * The work of a phase measured with {@link #time(Phase, PhaseAction)}.
+     */
+    @FunctionalInterface
+    public interface PhaseAction<E extends Exception> {
+        void run() throws E;
+    }
+
+    private static final LongAdder[] PHASE_NANOS = newAdders();
+    private static final LongAdder[] PHASE_COUNTS = newAdders();
+    private static final LongAdder BYTES_READ = new LongAdder();
+    private static final LongAdder BYTES_WRITTEN = new LongAdder();
+    private static final Queue<ItemMetrics> ITEMS = new ConcurrentLinkedQueue<>();
+    private static final ThreadLocal<ItemMetrics> CURRENT_ITEM = new ThreadLocal<>();
+    private static final ThreadLocal<EnumSet<Phase>> ACTIVE_PHASES =
+        ThreadLocal.withInitial(() -> EnumSet.noneOf(Phase.class));
+
+    /**
+     * Starts measuring a phase.
+     *
+     * @param phase the phase
+     * @return the timer to close at the end of the phase
+     */
+    public static Timer time(Phase phase) {
+        return new Timer(phase, !ACTIVE_PHASES.get().add(phase));
+    }
+
+    /**
+     * Measures a phase without byte counts, e.g. a directory walk.
+     *
+     * @param phase the phase
+     * @param task  the work of the phase
+     * @return the result of the task
+     * @throws E if the task fails
+     */
+    public static <T, E extends Exception> T time(Phase phase, PhaseTask<T, E> task) throws E {
+        Timer timer = time(phase);
+        try {
+            return task.call();
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Measures a phase without byte counts and without a result.
+     *
+     * @param phase  the phase
+     * @param action the work of the phase
+     * @throws E if the action fails
+     */
+    public static <E extends Exception> void time(Phase phase, PhaseAction<E> action) throws E {
+        Timer timer = time(phase);
+        try {
+            action.run();
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Processes an item and attributes all phases measured meanwhile by the current thread to it.
+     *
+     * @param itemPath the item
+     * @param task     the processing of the item
+     * @throws Exception if the task fails
+     */
+    public static void measureItem(String itemPath, BatchRunner.ItemTask task) throws Exception {
+        ItemMetrics previous = CURRENT_ITEM.get();
+        ItemMetrics item = new ItemMetrics(itemPath);
+        CURRENT_ITEM.set(item);
+        ItemEvent event = new ItemEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            task.process(itemPath);
+        } catch (Exception | Error e) {
+            item.error = e.toString();
+            throw e;
+        } finally {
+            item.elapsedNanos = System.nanoTime() - start;
+            CURRENT_ITEM.set(previous);
+            ITEMS.add(item);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.item = itemPath;
+                event.success = item.error == null;
+                event.bytesRead = item.bytesRead;
+                event.bytesWritten = item.bytesWritten;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * @return the measurements of all items processed so far, in completion order
+     */
+    public static List<ItemMetrics> getItems() {
+        return new ArrayList<>(ITEMS);
+    }
+
+    public static long getPhaseNanos(Phase phase) {
+        return PHASE_NANOS[phase.ordinal()].sum();
+    }
+
+    public static long getPhaseCount(Phase phase) {
+        return PHASE_COUNTS[phase.ordinal()].sum();
+    }
+
+    public static long getBytesRead() {
+        return BYTES_READ.sum();
+    }
+
+    public static long getBytesWritten() {
+        return BYTES_WRITTEN.sum();
+    }
+
+    /**
+     * Discards all measurements, e.g. between the commands of a long-running process.
+     */
+    public static void reset() {
+        for (Phase phase : Phase.values()) {
+            PHASE_NANOS[phase.ordinal()].reset();
+            PHASE_COUNTS[phase.ordinal()].reset();
+        }
+        BYTES_READ.reset();
+        BYTES_WRITTEN.reset();
+        ITEMS.clear();
+    }
+
+    private static void addBytes(long read, long written) {
+        BYTES_READ.add(read);
+        BYTES_WRITTEN.add(written);
+        ItemMetrics item = CURRENT_ITEM.get();
+        if (item != null) {
+            item.bytesRead += read;
+            item.bytesWritten += written;
+        }
+    }
+
+    private static LongAdder[] newAdders() {
+        LongAdder[] adders = new LongAdder[Phase.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
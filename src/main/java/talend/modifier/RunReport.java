@@ -0,0 +1,144 @@
+package talend.modifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes the measurements of {@link RunMetrics} as a JSON report.
+ * <p>
+ * The report contains the totals of the run (wall time, bytes read and written, time per phase), the
+ * percentiles of the per-item latencies, the slowest items, and the measurements of every single item.
+ */
+public class RunReport {
+
+    private static final int SLOWEST_ITEMS = 10;
+    private static final double[] PERCENTILES = {50, 90, 95, 99};
+
+    /**
+     * Writes the report of the current run.
+     *
+     * @param file        the JSON file to write
+     * @param command     the command line flag of the run
+     * @param startedAt   the start of the run
+     * @param wallNanos   the wall-clock duration of the run
+     * @throws IOException if the report cannot be written
+     */
+    public static void write(Path file, String command, Instant startedAt, long wallNanos) throws IOException {
+        List<RunMetrics.ItemMetrics> items = RunMetrics.getItems();
+        items.sort(Comparator.comparing(RunMetrics.ItemMetrics::getItemPath));
+        long failed = items.stream().filter(item -> item.getError() != null).count();
+
+        StringBuilder json = new StringBuilder(1024 + items.size() * 256);
+        json.append("{\n");
+        json.append("  \"command\": ").append(quote(command)).append(",\n");
+        json.append("  \"startedAt\": ").append(quote(startedAt.toString())).append(",\n");
+        json.append("  \"wallMillis\": ").append(millis(wallNanos)).append(",\n");
+        json.append("  \"items\": ").append(items.size()).append(",\n");
+        json.append("  \"failed\": ").append(failed).append(",\n");
+        json.append("  \"bytesRead\": ").append(RunMetrics.getBytesRead()).append(",\n");
+        json.append("  \"bytesWritten\": ").append(RunMetrics.getBytesWritten()).append(",\n");
+
+        json.append("  \"phases\": {");
+        RunMetrics.Phase[] phases = RunMetrics.Phase.values();
+        for (int i = 0; i < phases.length; i++) {
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    ").append(quote(phases[i].name())).append(": {\"count\": ")
+                .append(RunMetrics.getPhaseCount(phases[i])).append(", \"totalMillis\": ")
+                .append(millis(RunMetrics.getPhaseNanos(phases[i]))).append('}');
+        }
+        json.append("\n  },\n");
+
+        json.append("  \"latencyMillis\": {");
+        long[] latencies = items.stream().mapToLong(RunMetrics.ItemMetrics::getElapsedNanos).sorted().toArray();
+        if (latencies.length > 0) {
+            json.append("\"min\": ").append(millis(latencies[0]));
+            for (double percentile : PERCENTILES) {
+                json.append(", \"p").append((int) percentile).append("\": ")
+                    .append(millis(percentile(latencies, percentile)));
+            }
+            json.append(", \"max\": ").append(millis(latencies[latencies.length - 1]));
+            json.append(", \"mean\": ").append(millis((long) Arrays.stream(latencies).average().orElse(0)));
+        }
+        json.append("},\n");
+
+        List<RunMetrics.ItemMetrics> slowest = new ArrayList<>(items);
+        slowest.sort(Comparator.comparingLong(RunMetrics.ItemMetrics::getElapsedNanos).reversed());
+        json.append("  \"slowestItems\": [");
+        for (int i = 0; i < Math.min(SLOWEST_ITEMS, slowest.size()); i++) {
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"path\": ").append(quote(slowest.get(i).getItemPath()))
+                .append(", \"millis\": ").append(millis(slowest.get(i).getElapsedNanos())).append('}');
+        }
+        json.append(slowest.isEmpty() ? "],\n" : "\n  ],\n");
+
+        json.append("  \"files\": [");
+        for (int i = 0; i < items.size(); i++) {
+            RunMetrics.ItemMetrics item = items.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"path\": ").append(quote(item.getItemPath()));
+            json.append(", \"millis\": ").append(millis(item.getElapsedNanos()));
+            json.append(", \"success\": ").append(item.getError() == null);
+            if (item.getError() != null) {
+                json.append(", \"error\": ").append(quote(item.getError()));
+            }
+            json.append(", \"bytesRead\": ").append(item.getBytesRead());
+            json.append(", \"bytesWritten\": ").append(item.getBytesWritten());
+            json.append(", \"phaseMillis\": {");
+            boolean first = true;
+            for (RunMetrics.Phase phase : phases) {
+                if (item.getPhaseNanos(phase) > 0) {
+                    json.append(first ? "" : ", ").append(quote(phase.name())).append(": ")
+                        .append(millis(item.getPhaseNanos(phase)));
+                    first = false;
+                }
+            }
+            json.append("}}");
+        }
+        json.append(items.isEmpty() ? "]\n" : "\n  ]\n");
+        json.append("}\n");
+
+        byte[] content = json.toString().getBytes(StandardCharsets.UTF_8);
+        FileHelper.writeAtomically(file, tempFile -> Files.write(tempFile, content));
+    }
+
+    /**
+     * Nearest-rank percentile of sorted values.
+     */
+    private static long percentile(long[] sortedValues, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100 * sortedValues.length);
+        return sortedValues[Math.max(0, Math.min(sortedValues.length - 1, rank - 1))];
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\t': quoted.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,382 @@
+package talend.modifier;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Formatting-preserving writer for items modified through a {@link ProcessModel}.
+ * <p>
+ * Instead of serializing the whole document, the writer locates the byte ranges of the top-level elements in
+ * the original file and builds the new file from:
+ * <ul>
+ *     <li>the unchanged byte ranges, written from the bytes read for the layout scan;</li>
+ *     <li>the re-serialized top-level elements the model reports as modified;</li>
+ *     <li>the appended elements, inserted before the closing root tag.</li>
+ * </ul>
+ * Everything the injectors did not touch stays byte for byte as it was, so repeated runs neither re-indent
+ * the item nor let it grow, and the written bytes are proportional to the change. If the layout of the file
+ * cannot be matched with the document, the whole document is serialized instead. If the file was changed by
+ * someone else since it was scanned, the write fails rather than splicing stale offsets into the new content.
+ * <p>
+ * The {@link StreamingItemInjector} writes its changes the same way, so an item gets the same bytes whether or not
+ * it is above the streaming threshold.
+ */
+public class SpliceWriter {
+
+    /**
+     * Writes the changes tracked by the model to the item the model was loaded from.
+     *
+     * @param model    the model of the loaded item
+     * @param itemPath the item file the document was loaded from
+     * @return the content hash of the written item (see {@link RunManifest#hash(byte[])}), or an empty Optional if
+     * nothing changed
+     * @throws Exception if the item cannot be read or written
+     */
+    public static Optional<String> save(ProcessModel model, String itemPath) throws Exception {
+        try (RunMetrics.Timer timer = RunMetrics.time(RunMetrics.Phase.SERIALIZE)) {
+            if (!model.isModified()) {
+                return Optional.empty();
+            }
+
+            Path item = Paths.get(itemPath);
+            Document doc = model.getDocument();
+            Optional<ItemLayout> layout = ItemLayout.scan(item);
+            if (layout.isEmpty() || layout.get().elementCount() != model.getOriginalTopLevelElements().size()) {
+                return FileHelper.saveDocument(doc, itemPath);
+            }
+
+            Charset charset = doc.getXmlEncoding() == null
+                ? StandardCharsets.UTF_8
+                : Charset.forName(doc.getXmlEncoding());
+            SortedMap<Integer, Element> replacedElements = new TreeMap<>();
+            List<Element> originalElements = model.getOriginalTopLevelElements();
+            Set<Element> modifiedElements = model.getModifiedTopLevelElements();
+            for (int i = 0; i < originalElements.size(); i++) {
+                if (modifiedElements.contains(originalElements.get(i))) {
+                    replacedElements.put(i, originalElements.get(i));
+                }
+            }
+            return write(item, layout.get(), replacedElements, model.getAppendedElements(), charset, timer);
+        }
+    }
+
+    /**
+     * Writes replaced and appended top-level elements to an item, copying everything else from the original file.
+     *
+     * @param item             the item file
+     * @param layout           the layout of the item file
+     * @param replacedElements the new content of top-level elements, by index among the top-level elements
+     * @param appendedElements the elements to insert before the closing root tag
+     * @param charset          the encoding of the item
+     * @param timer            the timer the written bytes are reported to
+     * @return the content hash of the written item, or an empty Optional if nothing changed
+     * @throws IOException if the item cannot be read or written, or was changed since its layout was scanned
+     */
+    static Optional<String> write(Path item, ItemLayout layout, SortedMap<Integer, Element> replacedElements,
+                         List<Element> appendedElements, Charset charset, RunMetrics.Timer timer) throws IOException {
+        List<Splice> splices = createSplices(layout, replacedElements, appendedElements, charset);
+        if (splices.isEmpty()) {
+            return Optional.empty();
+        }
+
+        // The written bytes are hashed while they are written, without reading them back
+        MessageDigest digest = RunManifest.newDigest();
+
+        FileHelper.writeAtomically(item, tempFile -> {
+            try (FileChannel target = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                long position = 0;
+                for (Splice splice : splices) {
+                    write(layout.range(position, splice.start), target, digest);
+                    write(ByteBuffer.wrap(splice.replacement), target, digest);
+                    position = splice.end;
+                }
+                write(layout.range(position, layout.size), target, digest);
+                timer.written(target.size());
+            }
+            if (!layout.isCurrent(item)) {
+                throw new IOException("Item changed while it was being written: " + item);
+            }
+        });
+        return Optional.of(RunManifest.toHex(digest.digest()));
+    }
+
+    /**
+     * A byte range of the original file and the bytes replacing it; an empty range is an insertion.
+     */
+    private static class Splice {
+        private final long start;
+        private final long end;
+        private final byte[] replacement;
+
+        Splice(long start, long end, byte[] replacement) {
+            this.start = start;
+            this.end = end;
+            this.replacement = replacement;
+        }
+    }
+
+    private static List<Splice> createSplices(ItemLayout layout, SortedMap<Integer, Element> replacedElements,
+                                              List<Element> appendedElements, Charset charset) throws IOException {
+        List<Splice> splices = new ArrayList<>();
+
+        for (Map.Entry<Integer, Element> replaced : replacedElements.entrySet()) {
+            int i = replaced.getKey();
+            byte[] replacement = serialize(replaced.getValue(), layout.indentation, charset);
+            if (!layout.hasContent(i, replacement)) {
+                splices.add(new Splice(layout.elementStarts[i], layout.elementEnds[i], replacement));
+            }
+        }
+
+        if (!appendedElements.isEmpty()) {
+            ByteArrayOutputStream inserted = new ByteArrayOutputStream();
+            if (!layout.isRootEndTagOnNewLine()) {
+                inserted.write('\n');
+            }
+            for (Element element : appendedElements) {
+                inserted.write(layout.indentation.getBytes(charset));
+                inserted.write(serialize(element, layout.indentation, charset));
+                inserted.write('\n');
+            }
+            splices.add(new Splice(layout.rootEndTagStart, layout.rootEndTagStart, inserted.toByteArray()));
+        }
+
+        return splices;
+    }
+
+    private static byte[] serialize(Element element, String indentation, Charset charset) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        try (XmlFragmentWriter writer = new XmlFragmentWriter(new OutputStreamWriter(out, charset), indentation)) {
+            writer.element(element, 1);
+        }
+        return out.toByteArray();
+    }
+
+    private static void write(ByteBuffer bytes, FileChannel target, MessageDigest digest) throws IOException {
+        digest.update(bytes.duplicate());
+        while (bytes.hasRemaining()) {
+            target.write(bytes);
+        }
+    }
+
+    /**
+     * Byte offsets of the top-level elements and of the closing root tag of an item, found with a lightweight
+     * scan of the raw bytes (tags, comments, CDATA sections, processing instructions and quoted attribute
+     * values are recognized; no XML parser is involved). The layout keeps the bytes it was scanned from, together
+     * with the size and modification time of the file at that point.
+     */
+    static class ItemLayout {
+        private final ByteBuffer content;
+        private final long size;
+        private final long lastModified;
+        private final long[] elementStarts;
+        private final long[] elementEnds;
+        private final int rootEndTagStart;
+        private final String indentation;
+
+        private ItemLayout(ByteBuffer content, long lastModified, List<long[]> elements, int rootEndTagStart) {
+            this.content = content;
+            this.size = content.limit();
+            this.lastModified = lastModified;
+            this.elementStarts = elements.stream().mapToLong(range -> range[0]).toArray();
+            this.elementEnds = elements.stream().mapToLong(range -> range[1]).toArray();
+            this.rootEndTagStart = rootEndTagStart;
+            this.indentation = detectIndentation();
+        }
+
+        /**
+         * @return {@code true} if the file still has the size and modification time it had when it was scanned
+         */
+        boolean isCurrent(Path item) throws IOException {
+            return Files.size(item) == size && Files.getLastModifiedTime(item).toMillis() == lastModified;
+        }
+
+        int elementCount() {
+            return elementStarts.length;
+        }
+
+        boolean hasContent(int element, byte[] bytes) {
+            return elementEnds[element] - elementStarts[element] == bytes.length
+                && range(elementStarts[element], elementEnds[element]).equals(ByteBuffer.wrap(bytes));
+        }
+
+        /**
+         * @return the original bytes between the given offsets
+         */
+        ByteBuffer range(long start, long end) {
+            return content.slice().position((int) start).limit((int) end);
+        }
+
+        /**
+         * @return {@code true} if the top-level element with the given index has the given qualified name
+         */
+        boolean isElementNamed(int element, String name) {
+            int position = (int) elementStarts[element] + 1;
+            if (!startsWith(content, position, name) || position + name.length() >= content.limit()) {
+                return false;
+            }
+            byte next = content.get(position + name.length());
+            return next == '>' || next == '/' || Character.isWhitespace(next);
+        }
+
+        boolean isRootEndTagOnNewLine() {
+            int i = rootEndTagStart - 1;
+            while (i >= 0 && (content.get(i) == ' ' || content.get(i) == '\t')) {
+                i--;
+            }
+            return i >= 0 && content.get(i) == '\n';
+        }
+
+        private String detectIndentation() {
+            if (elementStarts.length == 0) {
+                return "  ";
+            }
+            int start = (int) elementStarts[0];
+            int i = start - 1;
+            while (i >= 0 && (content.get(i) == ' ' || content.get(i) == '\t')) {
+                i--;
+            }
+            if (i < 0 || content.get(i) != '\n' || i == start - 1) {
+                return "  ";
+            }
+            byte[] bytes = new byte[start - i - 1];
+            content.slice().position(i + 1).get(bytes);
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+
+        static Optional<ItemLayout> scan(Path item) throws IOException {
+            long lastModified = Files.getLastModifiedTime(item).toMillis();
+            if (Files.size(item) > Integer.MAX_VALUE) {
+                return Optional.empty();
+            }
+            ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(item));
+
+            List<long[]> elements = new ArrayList<>();
+            int limit = content.limit();
+            int depth = 0;
+            int elementStart = -1;
+            int position = 0;
+
+            while (position < limit) {
+                if (content.get(position) != '<') {
+                    position++;
+                    continue;
+                }
+                if (startsWith(content, position, "<?")) {
+                    position = skipPast(content, position, "?>");
+                } else if (startsWith(content, position, "<!--")) {
+                    position = skipPast(content, position, "-->");
+                } else if (startsWith(content, position, "<![CDATA[")) {
+                    position = skipPast(content, position, "]]>");
+                } else if (startsWith(content, position, "<!")) {
+                    position = skipDeclaration(content, position);
+                } else if (startsWith(content, position, "</")) {
+                    int end = skipPast(content, position, ">");
+                    if (end < 0) {
+                        return Optional.empty();
+                    }
+                    depth--;
+                    if (depth == 1) {
+                        elements.add(new long[]{elementStart, end});
+                    } else if (depth == 0) {
+                        return Optional.of(new ItemLayout(content, lastModified, elements, position));
+                    }
+                    position = end;
+                } else {
+                    int end = skipTag(content, position);
+                    if (end < 0) {
+                        return Optional.empty();
+                    }
+                    boolean selfClosing = content.get(end - 2) == '/';
+                    if (depth == 1) {
+                        elementStart = position;
+                        if (selfClosing) {
+                            elements.add(new long[]{elementStart, end});
+                        }
+                    }
+                    if (!selfClosing) {
+                        depth++;
+                    }
+                    position = end;
+                }
+                if (position < 0) {
+                    return Optional.empty();
+                }
+            }
+            return Optional.empty();
+        }
+
+        private static boolean startsWith(ByteBuffer content, int position, String prefix) {
+            if (position + prefix.length() > content.limit()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (content.get(position + i) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the position right after the next occurrence of the terminator, or -1 if there is none
+         */
+        private static int skipPast(ByteBuffer content, int position, String terminator) {
+            for (int i = position + 1; i + terminator.length() <= content.limit(); i++) {
+                if (startsWith(content, i, terminator)) {
+                    return i + terminator.length();
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the position right after the start tag at the given position, or -1 if it is not closed
+         */
+        private static int skipTag(ByteBuffer content, int position) {
+            byte quote = 0;
+            for (int i = position + 1; i < content.limit(); i++) {
+                byte b = content.get(i);
+                if (quote != 0) {
+                    if (b == quote) quote = 0;
+                } else if (b == '"' || b == '\'') {
+                    quote = b;
+                } else if (b == '>') {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the position right after a declaration such as DOCTYPE, including an internal subset
+         */
+        private static int skipDeclaration(ByteBuffer content, int position) {
+            int brackets = 0;
+            for (int i = position + 2; i < content.limit(); i++) {
+                byte b = content.get(i);
+                if (b == '[') {
+                    brackets++;
+                } else if (b == ']') {
+                    brackets--;
+                } else if (b == '>' && brackets == 0) {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -1,8 +1,8 @@
 package talend.modifier;
 
-import org.w3c.dom.*;
-
-import java.util.function.Predicate;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Optional;
 
 public class StatusInjector {
 
@@ -10,118 +10,88 @@ public class StatusInjector {
     public static final String DEFAULT_T_JAVA_ROW_UNIQUE_NAME = "__tJavaRow_status__";
     public static final String DEFAULT_STATUS_OUTPUT_FLOW_UNIQUE_NAME = "__status__";
 
-    public static final Predicate<Document> IS_T_REST_RESPONSE_MISSING =
-        doc -> !TalendComponentsHelper.hasComponentExists(
-            doc,
-            StatusInjector.DEFAULT_T_REST_RESPONSE_UNIQUE_NAME,
-            "UNIQUE_NAME"
-        );
-
-    public static final Predicate<Document> IS_T_JAVA_ROW_MISSING =
-        doc -> !TalendComponentsHelper.hasComponentExists(
-            doc,
-            StatusInjector.DEFAULT_T_JAVA_ROW_UNIQUE_NAME,
-            "UNIQUE_NAME"
-        );
-
-    public static final Predicate<Document> IS_T_REST_REQUEST_PRESENT =
-        doc -> TalendComponentsHelper.hasComponentExists(
-            doc,
-            "tRESTRequest",
-            "componentName"
-        );
-
-    public static final Predicate<Document> IS_CONNECTION_BETWEEN_T_JAVA_ROW_AND_T_REST_RESPONSE_MISSING =
-        doc -> !TalendComponentsHelper.isConnectionAlreadyPresent(
-            doc,
-            "row " + DEFAULT_STATUS_OUTPUT_FLOW_UNIQUE_NAME
-        );
-
-    public static final Predicate<Document> IS_CONNECTION_BETWEEN_T_REST_REQUEST_AND_T_JAVA_ROW_MISSING =
-        doc -> !TalendComponentsHelper.isConnectionAlreadyPresent(
-            doc,
-            DEFAULT_STATUS_OUTPUT_FLOW_UNIQUE_NAME
-        );
-
-    public static final Predicate<Document> ARE_T_JAVA_ROW_AND_T_REST_RESPONSE_MISSING =
-        IS_T_REST_RESPONSE_MISSING.or(IS_T_JAVA_ROW_MISSING);
-
-    public static void injectStatusToService(String servicePath) {
+    /**
+     * Injects status handling into a single service.
+     *
+     * @param servicePath the path of the service item
+     * @return {@code true} if the service was processed successfully
+     */
+    public static boolean injectStatusToService(String servicePath) {
         try {
-            Document doc = FileHelper.loadDocument(servicePath);
-            doc.getDocumentElement().normalize();
-
-            if (IS_T_REST_REQUEST_PRESENT.test(doc)) {
-
-                if (ARE_T_JAVA_ROW_AND_T_REST_RESPONSE_MISSING.test(doc)) {
-                    System.out.println("Processing file: " + servicePath);
-
-                    if (IS_T_REST_RESPONSE_MISSING.test(doc)) {
-                        Element tRestResponse = TalendComponentsHelper.getNewTRestResponseComponent(
-                            doc,
-                            DEFAULT_T_REST_RESPONSE_UNIQUE_NAME,
-                            "String",
-                            "OK (200)"
-                        );
-                        doc.getDocumentElement().appendChild(tRestResponse);
-                        System.out.println("component: " + DEFAULT_T_REST_RESPONSE_UNIQUE_NAME + " created");
-                    } else System.out.println("component: " + DEFAULT_T_REST_RESPONSE_UNIQUE_NAME + " existed");
-
-                    if (IS_T_JAVA_ROW_MISSING.test(doc)) {
-                        Element tJavaRow = TalendComponentsHelper.getNewTJavaRowComponent(doc,
-                            DEFAULT_T_JAVA_ROW_UNIQUE_NAME,
-                            ExternalCode.T_JAVA_ROW_STATUS_CODE
-                        );
-                        doc.getDocumentElement().appendChild(tJavaRow);
-                        System.out.println("component: " + DEFAULT_T_JAVA_ROW_UNIQUE_NAME + " created");
-                    } else System.out.println("component: " + DEFAULT_T_JAVA_ROW_UNIQUE_NAME + " existed");
-
-                    if (IS_CONNECTION_BETWEEN_T_JAVA_ROW_AND_T_REST_RESPONSE_MISSING.test(doc)) {
-                        Element connection = TalendComponentsHelper.getNewMainConnectionComponentWithSingleSchemaColumn(
-                            doc,
-                            DEFAULT_T_JAVA_ROW_UNIQUE_NAME,
-                            DEFAULT_T_REST_RESPONSE_UNIQUE_NAME,
-                            "body"
-                        );
-                        doc.getDocumentElement().appendChild(connection);
-                        System.out.println("connection: " + DEFAULT_T_JAVA_ROW_UNIQUE_NAME +
-                            "_" + DEFAULT_T_REST_RESPONSE_UNIQUE_NAME + " created");
-                    } else System.out.println("connection: " + DEFAULT_T_JAVA_ROW_UNIQUE_NAME +
-                        "_" + DEFAULT_T_REST_RESPONSE_UNIQUE_NAME + " existed");
-
-                    TalendComponentsHelper.addOutputFlowToTRestRequestIfItsNotExisted(
-                        doc,
-                        DEFAULT_STATUS_OUTPUT_FLOW_UNIQUE_NAME,
-                        "GET",
-                        "/" + DEFAULT_STATUS_OUTPUT_FLOW_UNIQUE_NAME,
-                        "NONE",
-                        "JSON"
-                    );
+            RunMetrics.measureItem(servicePath, StatusInjector::processServiceFile);
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
 
-                    String tRestRequestName = TalendComponentsHelper.getUniqueComponentName(doc,
-                        "tRESTRequest").get();
+    public static void processServiceFile(String servicePath) throws Exception {
+        RunManifest manifest = RunManifest.getDefault();
+        if (manifest.isUpToDate(servicePath, RunManifest.MODE_STATUS, ExternalCode.T_JAVA_ROW_STATUS_CODE)) {
+            System.out.println("Unchanged since last run, skipped: " + servicePath);
+            return;
+        }
 
-                    if (IS_CONNECTION_BETWEEN_T_REST_REQUEST_AND_T_JAVA_ROW_MISSING.test(doc)) {
-                        Element connection = TalendComponentsHelper.getNewMainConnectionComponentWithoutSchema(
-                            doc,
-                            tRestRequestName,
-                            DEFAULT_T_JAVA_ROW_UNIQUE_NAME,
-                            DEFAULT_STATUS_OUTPUT_FLOW_UNIQUE_NAME
-                        );
-                        doc.getDocumentElement().appendChild(connection);
-                        System.out.println("connection: " + tRestRequestName +
-                            "_" + DEFAULT_T_JAVA_ROW_UNIQUE_NAME + " created");
-                    } else System.out.println("connection: " + tRestRequestName +
-                        "_" + DEFAULT_T_JAVA_ROW_UNIQUE_NAME + " existed");
+        switch (ItemPrefilter.forStatus(Paths.get(servicePath))) {
+            case SKIP:
+                System.out.println("tRestRequest component not found");
+                manifest.record(servicePath, RunManifest.MODE_STATUS, ExternalCode.T_JAVA_ROW_STATUS_CODE);
+                break;
+            case ALREADY_DONE:
+                System.out.println("tRestResponse and tJavaRow components already exist. No action required.");
+                manifest.record(servicePath, RunManifest.MODE_STATUS, ExternalCode.T_JAVA_ROW_STATUS_CODE);
+                break;
+            default:
+                String contentHash = injectStatus(servicePath, ItemCatalog.getDefault().get(Paths.get(servicePath)));
+                manifest.record(servicePath, RunManifest.MODE_STATUS, ExternalCode.T_JAVA_ROW_STATUS_CODE, contentHash);
+                break;
+        }
+    }
 
-                    FileHelper.saveDocument(doc, servicePath);
+    /**
+     * Computes the changes the status injection would make to a service, without writing anything. The
+     * changes are decided on the summary of the service in the {@link ItemCatalog}, so an unchanged service is
+     * not even read; the status rules skip services without tRESTRequest or with both status components.
+     *
+     * @param servicePath the service item to plan
+     * @return the planned changes; empty if the item needs none
+     * @throws Exception if the item cannot be read or parsed
+     */
+    public static ChangePlan.ItemPlan planServiceFile(String servicePath) throws Exception {
+        if (RunManifest.getDefault().isUpToDate(servicePath, RunManifest.MODE_STATUS,
+            ExternalCode.T_JAVA_ROW_STATUS_CODE)) {
+            return ChangePlan.ItemPlan.unchanged(servicePath);
+        }
 
-                } else System.out.println("tRestResponse and tJavaRow components already exist. No action required.");
+        ItemCatalog.Entry entry = ItemCatalog.getDefault().get(Paths.get(servicePath));
+        return new ChangePlan.ItemPlan(servicePath, entry.getContentHash(),
+            evaluateStatusRules(entry.getSummary()).getActions());
+    }
 
-            } else System.out.println("tRestRequest component not found");
+    /**
+     * @return the content hash of the service after the injection
+     */
+    private static String injectStatus(String servicePath, ItemCatalog.Entry entry) throws Exception {
+        InjectionRules.Evaluation evaluation = evaluateStatusRules(entry.getSummary());
+        if (evaluation.getUnmetRequirement().isPresent()) {
+            System.out.println(evaluation.getUnmetRequirement().get());
+            return entry.getContentHash();
+        }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+        System.out.println("Processing file: " + servicePath);
+        Optional<String> contentHash = evaluation.applyTo(Paths.get(servicePath), entry.getSummary());
+        for (ChangePlan.Action action : evaluation.getActions()) {
+            System.out.println(action);
         }
+        return contentHash.orElse(entry.getContentHash());
+    }
+
+    /**
+     * Decides on the changes of the status injection with the built-in {@link InjectionRules#STATUS} rules.
+     */
+    static InjectionRules.Evaluation evaluateStatusRules(ItemSummary summary) {
+        return InjectionRules.builtIn(InjectionRules.STATUS).evaluate(summary,
+            Map.of(InjectionRules.SNIPPET, ExternalCode.T_JAVA_ROW_STATUS_CODE));
     }
-}
\ No newline at end of file
+}
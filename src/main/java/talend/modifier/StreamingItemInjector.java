@@ -0,0 +1,395 @@
+package talend.modifier;
+
+import org.w3c.dom.*;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Streaming counterpart of the document based saving of {@link InjectionRules.Evaluation#applyTo(Path,
+ * ItemSummary)} for very large items.
+ * <p>
+ * The actions of an injection are decided by its rules on the {@link ItemSummary} of the item, like for any
+ * other item. Instead of loading the whole item into a DOM, they are then performed with {@code javax.xml.stream}:
+ * <ol>
+ *     <li>a read pass materializes the handful of existing top-level nodes the actions edit (the node of an updated
+ *     parameter, the tRESTRequest receiving an output flow, the ends of a traced flow) in a scratch document, and
+ *     stops after the last of them;</li>
+ *     <li>the actions are performed on the {@link ProcessModel} of the scratch document, which therefore holds the
+ *     edited nodes and the new elements;</li>
+ *     <li>the edited nodes and the new elements are written like {@link SpliceWriter} writes them: the bytes of
+ *     everything else are copied from the original file, so the item gets the same bytes as when it is saved
+ *     from a DOM.</li>
+ * </ol>
+ * Memory therefore depends on the number of components, not on the size of the item (large items are dominated
+ * by code and schemas).
+ */
+public class StreamingItemInjector {
+
+    /**
+     * Items of at least this size (in bytes) are processed by the streaming injector.
+     * Can be overridden with the {@code modifier.streaming.threshold} system property.
+     */
+    public static final long DEFAULT_STREAMING_THRESHOLD = 16L * 1024 * 1024;
+
+    /**
+     * Determines whether the given item is large enough to be processed by the streaming injector.
+     *
+     * @param itemPath the path of the item
+     * @return {@code true} if the item should be streamed rather than loaded as DOM
+     */
+    public static boolean isPreferredFor(Path itemPath) {
+        long threshold = Long.getLong("modifier.streaming.threshold", DEFAULT_STREAMING_THRESHOLD);
+        return itemPath.toFile().length() >= threshold;
+    }
+
+    /**
+     * Performs the actions of an injection on an item and saves it.
+     *
+     * @param itemPath the item
+     * @param summary  the summary of the item the actions were decided on
+     * @param actions  the actions, in order
+     * @return the content hash of the written item (see {@link RunManifest#hash(byte[])}), or an empty Optional if
+     * nothing changed
+     * @throws IOException        if the item cannot be read or written
+     * @throws XMLStreamException if the item is not well-formed
+     */
+    public static Optional<String> applyActions(Path itemPath, ItemSummary summary, List<ChangePlan.Action> actions)
+        throws IOException, XMLStreamException {
+        Rewrite rewrite = new Rewrite();
+        rewrite.readNodes(itemPath, getEditedNodes(summary, actions));
+
+        ProcessModel model = ProcessModel.of(rewrite.scratch);
+        RunMetrics.time(RunMetrics.Phase.MUTATE, () -> {
+            for (ChangePlan.Action action : actions) {
+                action.applyTo(model);
+            }
+        });
+        if (!model.isModified()) {
+            return Optional.empty();
+        }
+        return rewrite.applyTo(itemPath, model);
+    }
+
+    /**
+     * Determines the ordinals of the existing nodes an action may edit, i.e. the nodes it looks up in the
+     * {@link ProcessModel}.
+     */
+    private static SortedSet<Integer> getEditedNodes(ItemSummary summary, List<ChangePlan.Action> actions) {
+        SortedSet<Integer> ordinals = new TreeSet<>();
+        for (ChangePlan.Action action : actions) {
+            List<String> arguments = action.getArguments();
+            switch (action.getType()) {
+                case ADD_CONNECTION:
+                    if ("TRACED_FLOW".equals(arguments.get(0))) {
+                        for (String uniqueName : arguments.subList(2, 4)) {
+                            summary.findNodeByTextUniqueName(uniqueName)
+                                .ifPresent(node -> ordinals.add(node.getOrdinal()));
+                        }
+                    }
+                    break;
+                case ADD_OUTPUT_FLOW:
+                    List<ItemSummary.NodeSummary> tRestRequests = summary.getNodesByComponentName("tRESTRequest");
+                    if (!tRestRequests.isEmpty()) {
+                        ordinals.add(tRestRequests.get(0).getOrdinal());
+                    }
+                    break;
+                case UPDATE_PARAMETER:
+                    for (ItemSummary.NodeSummary node : summary.getNodesByUniqueName(arguments.get(1))) {
+                        ordinals.add(node.getOrdinal());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return ordinals;
+    }
+
+    /**
+     * The scratch document the actions are performed on, the index among the top-level elements of each node read
+     * into it, and what the read pass learnt about the layout of the item.
+     */
+    private static class Rewrite {
+        private final Document scratch = newScratchDocument();
+        private final Map<Element, Integer> elementIndexes = new HashMap<>();
+        private Charset charset = StandardCharsets.UTF_8;
+        private String indentation;
+
+        /**
+         * Reads the top-level nodes with the given ordinals into the scratch document, in document order, and the
+         * encoding and indentation of the item.
+         */
+        void readNodes(Path itemPath, SortedSet<Integer> ordinals) throws IOException, XMLStreamException {
+            try (RunMetrics.Timer timer = RunMetrics.time(RunMetrics.Phase.PARSE);
+                 FileChannel channel = FileChannel.open(itemPath, StandardOpenOption.READ)) {
+                XMLStreamReader reader = FileHelper.createStreamReader(
+                    new BufferedInputStream(Channels.newInputStream(channel)));
+                try {
+                    if (reader.getCharacterEncodingScheme() != null) {
+                        charset = Charset.forName(reader.getCharacterEncodingScheme());
+                    }
+                    int lastOrdinal = ordinals.isEmpty() ? -1 : ordinals.last();
+                    int depth = 0;
+                    int elementIndex = 0;
+                    int nodeOrdinal = 0;
+                    String text = "";
+                    while (reader.hasNext() && (indentation == null || nodeOrdinal <= lastOrdinal)) {
+                        int event = reader.next();
+                        if (event == XMLStreamConstants.START_ELEMENT) {
+                            depth++;
+                            if (depth == 2) {
+                                if (indentation == null) {
+                                    indentation = detectIndentation(text);
+                                }
+                                if ("node".equals(reader.getLocalName())) {
+                                    if (ordinals.contains(nodeOrdinal)) {
+                                        Element node = readElement(reader, scratch);
+                                        scratch.getDocumentElement().appendChild(node);
+                                        elementIndexes.put(node, elementIndex);
+                                        depth--;
+                                    }
+                                    nodeOrdinal++;
+                                }
+                                elementIndex++;
+                            }
+                        } else if (event == XMLStreamConstants.END_ELEMENT) {
+                            depth--;
+                        } else if (depth == 1
+                            && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.SPACE)) {
+                            text = reader.getText();
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+                // The read pass stops after the last edited node, unless it reached the end of the item
+                timer.read(channel.isOpen() ? channel.position() : Files.size(itemPath));
+            }
+            if (indentation == null) {
+                indentation = "  ";
+            }
+        }
+
+        /**
+         * Writes the edited nodes and the appended elements of the model to the item. The bytes of everything else
+         * are copied by {@link SpliceWriter}; only if the layout of the item cannot be scanned, e.g. because it
+         * exceeds 2 GB, the events of the item are piped through an {@link XmlFragmentWriter} instead.
+         */
+        Optional<String> applyTo(Path itemPath, ProcessModel model) throws IOException, XMLStreamException {
+            SortedMap<Integer, Element> replacedElements = new TreeMap<>();
+            for (Element node : model.getModifiedTopLevelElements()) {
+                replacedElements.put(elementIndexes.get(node), node);
+            }
+            List<Element> appendedElements = model.getAppendedElements();
+
+            try (RunMetrics.Timer timer = RunMetrics.time(RunMetrics.Phase.SERIALIZE)) {
+                Optional<SpliceWriter.ItemLayout> layout = SpliceWriter.ItemLayout.scan(itemPath);
+                if (layout.isPresent() && matches(layout.get(), replacedElements)) {
+                    return SpliceWriter.write(itemPath, layout.get(), replacedElements, appendedElements, charset,
+                        timer);
+                }
+
+                timer.read(Files.size(itemPath));
+                MessageDigest digest = RunManifest.newDigest();
+                boolean replaced = FileHelper.writeAtomicallyIfChanged(itemPath, tempFile -> {
+                    copy(itemPath, tempFile, replacedElements, appendedElements, digest);
+                    timer.written(Files.size(tempFile));
+                });
+                return replaced ? Optional.of(RunManifest.toHex(digest.digest())) : Optional.empty();
+            }
+        }
+
+        private static boolean matches(SpliceWriter.ItemLayout layout, SortedMap<Integer, Element> replacedElements) {
+            for (Map.Entry<Integer, Element> replaced : replacedElements.entrySet()) {
+                if (replaced.getKey() >= layout.elementCount()
+                    || !layout.isElementNamed(replaced.getKey(), replaced.getValue().getTagName())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Writes the copy, feeding the written bytes to the digest.
+         */
+        private void copy(Path source, Path target, Map<Integer, Element> replacedElements,
+                          List<Element> appendedElements, MessageDigest digest) throws IOException, XMLStreamException {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(source));
+                 OutputStream out = new DigestOutputStream(Files.newOutputStream(target), digest)) {
+                XMLStreamReader reader = FileHelper.createStreamReader(in);
+                try (XmlFragmentWriter writer = new XmlFragmentWriter(new BufferedWriter(
+                    new OutputStreamWriter(out, charset)), indentation)) {
+                    if (reader.getVersion() != null) {
+                        writer.declaration(reader.getVersion(), reader.getCharacterEncodingScheme(),
+                            reader.standaloneSet() ? reader.isStandalone() : null);
+                    }
+                    copyEvents(reader, writer, replacedElements, appendedElements);
+                    // The reader does not report the whitespace after the root element
+                    writer.raw(readEpilog(source));
+                } finally {
+                    reader.close();
+                }
+            }
+        }
+
+        private void copyEvents(XMLStreamReader reader, XmlFragmentWriter writer,
+                                Map<Integer, Element> replacedElements, List<Element> appendedElements)
+            throws IOException, XMLStreamException {
+            int depth = 0;
+            int elementIndex = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        if (depth == 2) {
+                            Element replacement = replacedElements.get(elementIndex++);
+                            if (replacement != null) {
+                                skipElement(reader);
+                                writer.element(replacement, 1);
+                                depth--;
+                                break;
+                            }
+                        }
+                        writer.startElement(reader);
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (depth == 1) {
+                            for (Element element : appendedElements) {
+                                writer.text(indentation);
+                                writer.element(element, 1);
+                                writer.text("\n");
+                            }
+                        }
+                        writer.endElement(reader);
+                        depth--;
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.SPACE:
+                        writer.text(reader.getText());
+                        break;
+                    case XMLStreamConstants.CDATA:
+                        writer.cdata(reader.getText());
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        writer.comment(reader.getText());
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        writer.processingInstruction(reader.getPITarget(), reader.getPIData());
+                        break;
+                    case XMLStreamConstants.DTD:
+                        writer.raw(reader.getText());
+                        break;
+                    case XMLStreamConstants.ENTITY_REFERENCE:
+                        writer.raw("&" + reader.getLocalName() + ";");
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+            int depth = 1;
+            while (depth > 0) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        }
+
+        /**
+         * @return the whitespace following the last tag of the item
+         */
+        private String readEpilog(Path itemPath) throws IOException {
+            try (FileChannel channel = FileChannel.open(itemPath, StandardOpenOption.READ)) {
+                ByteBuffer tail = ByteBuffer.allocate((int) Math.min(channel.size(), 1024));
+                channel.position(channel.size() - tail.capacity());
+                while (tail.hasRemaining()) {
+                    if (channel.read(tail) < 0) {
+                        break;
+                    }
+                }
+                String text = new String(tail.array(), charset);
+                String epilog = text.substring(text.lastIndexOf('>') + 1);
+                return epilog.isBlank() ? epilog : "";
+            }
+        }
+    }
+
+    /**
+     * @param text the text preceding the first top-level element
+     * @return the indentation of the first top-level element, two spaces if it is not on a line of its own
+     */
+    private static String detectIndentation(String text) {
+        String indentation = text.substring(text.lastIndexOf('\n') + 1);
+        if (!text.contains("\n") || indentation.isEmpty() || !indentation.isBlank()) {
+            return "  ";
+        }
+        return indentation;
+    }
+
+    /**
+     * Reads the element at the current START_ELEMENT event, including all of its content, into a DOM element.
+     */
+    private static Element readElement(XMLStreamReader reader, Document doc) throws XMLStreamException {
+        Element element = doc.createElement(XmlFragmentWriter.qualifiedName(reader.getPrefix(), reader.getLocalName()));
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            element.setAttribute(prefix == null || prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix,
+                reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String name =
+                XmlFragmentWriter.qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+            element.setAttribute(name, reader.getAttributeValue(i));
+        }
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    element.appendChild(readElement(reader, doc));
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    return element;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    element.appendChild(doc.createTextNode(reader.getText()));
+                    break;
+                case XMLStreamConstants.CDATA:
+                    element.appendChild(doc.createCDATASection(reader.getText()));
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    element.appendChild(doc.createComment(reader.getText()));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return element;
+    }
+
+    private static Document newScratchDocument() {
+        Document doc = FileHelper.newDocument();
+        doc.appendChild(doc.createElement("scratch"));
+        return doc;
+    }
+}
@@ -0,0 +1,381 @@
+package talend.modifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Read-only audit of a workspace before a release.
+ * <p>
+ * The audit reports services without the status endpoint, jobs used by routes (directly or through tRunJob)
+ * without the logger configuration, and "Latest" references of routes whose resolution is not obvious: the job
+ * has no version at all, string order would pick another version than the numeric order used by the modifier,
+ * or the latest version exists in several folders. The checks are the ones of {@link StatusInjector} and
+ * {@link LoggerInjector}, evaluated on the item summaries of the {@link ItemCatalog} in parallel, so nothing
+ * is loaded as a document and nothing in the workspace is written. The findings can be written as JSON or CSV.
+ */
+public class WorkspaceAudit {
+
+    public static final String CHECK_ITEM = "item";
+    public static final String CHECK_STATUS = "status-endpoint";
+    public static final String CHECK_LOGGER = "logger-config";
+    public static final String CHECK_LATEST = "latest-version";
+
+    /**
+     * Outcome of a single check.
+     */
+    public enum Status {
+        /**
+         * The check holds.
+         */
+        OK,
+        /**
+         * The injection has not been performed, e.g. a service without status endpoint.
+         */
+        MISSING,
+        /**
+         * A "Latest" reference may resolve to another version than expected.
+         */
+        MISMATCH,
+        /**
+         * The item could not be read or a reference could not be resolved.
+         */
+        ERROR
+    }
+
+    /**
+     * The outcome of one check for one item.
+     */
+    public static final class Finding {
+        private final String check;
+        private final Status status;
+        private final String item;
+        private final String subject;
+        private final String detail;
+
+        Finding(String check, Status status, String item, String subject, String detail) {
+            this.check = check;
+            this.status = status;
+            this.item = item;
+            this.subject = subject;
+            this.detail = detail;
+        }
+
+        public String getCheck() {
+            return check;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the audited item, relative to the workspace
+         */
+        public String getItem() {
+            return item;
+        }
+
+        /**
+         * @return what the check is about within the item, e.g. a job reference; may be empty
+         */
+        public String getSubject() {
+            return subject;
+        }
+
+        /**
+         * @return the missing changes, the conflicting versions or the error; may be empty
+         */
+        public String getDetail() {
+            return detail;
+        }
+
+        @Override
+        public String toString() {
+            return status + " " + check + " " + item + (subject.isEmpty() ? "" : " [" + subject + "]") +
+                (detail.isEmpty() ? "" : ": " + detail);
+        }
+    }
+
+    /**
+     * The findings of one audit.
+     */
+    public static final class Report {
+        private final Path workspaceDir;
+        private final Instant startedAt;
+        private final int items;
+        private final List<Finding> findings;
+
+        private Report(Path workspaceDir, Instant startedAt, int items, List<Finding> findings) {
+            this.workspaceDir = workspaceDir;
+            this.startedAt = startedAt;
+            this.items = items;
+            this.findings = findings;
+        }
+
+        /**
+         * @return the number of audited items
+         */
+        public int getItems() {
+            return items;
+        }
+
+        public List<Finding> getFindings() {
+            return findings;
+        }
+
+        /**
+         * @return the number of findings per check and status, in check order
+         */
+        public Map<String, Map<Status, Integer>> countFindings() {
+            Map<String, Map<Status, Integer>> counts = new LinkedHashMap<>();
+            for (Finding finding : findings) {
+                counts.computeIfAbsent(finding.check, k -> new EnumMap<>(Status.class))
+                    .merge(finding.status, 1, Integer::sum);
+            }
+            return counts;
+        }
+
+        /**
+         * Prints the number of findings per check and every finding that is not {@link Status#OK}.
+         */
+        public void print() {
+            System.out.println("Audited " + items + " item(s) of " + workspaceDir);
+            countFindings().forEach((check, counts) -> System.out.println("  " + check + ": " + counts));
+            for (Finding finding : findings) {
+                if (finding.status != Status.OK) {
+                    System.out.println(finding);
+                }
+            }
+        }
+
+        /**
+         * Writes the report as CSV if the file name ends with {@code .csv}, and as JSON otherwise.
+         *
+         * @param file the report file
+         * @throws IOException if the report cannot be written
+         */
+        public void write(Path file) throws IOException {
+            String content = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv")
+                ? toCsv()
+                : toJson();
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            FileHelper.writeAtomically(file, tempFile -> Files.write(tempFile, bytes));
+        }
+
+        private String toJson() {
+            StringBuilder json = new StringBuilder(1024 + findings.size() * 160);
+            json.append("{\n");
+            json.append("  \"workspace\": ").append(RunReport.quote(workspaceDir.toString())).append(",\n");
+            json.append("  \"startedAt\": ").append(RunReport.quote(startedAt.toString())).append(",\n");
+            json.append("  \"items\": ").append(items).append(",\n");
+
+            json.append("  \"summary\": {");
+            boolean firstCheck = true;
+            for (Map.Entry<String, Map<Status, Integer>> check : countFindings().entrySet()) {
+                json.append(firstCheck ? "\n" : ",\n");
+                json.append("    ").append(RunReport.quote(check.getKey())).append(": {");
+                boolean firstStatus = true;
+                for (Map.Entry<Status, Integer> count : check.getValue().entrySet()) {
+                    json.append(firstStatus ? "" : ", ").append(RunReport.quote(count.getKey().name()))
+                        .append(": ").append(count.getValue());
+                    firstStatus = false;
+                }
+                json.append('}');
+                firstCheck = false;
+            }
+            json.append(firstCheck ? "},\n" : "\n  },\n");
+
+            json.append("  \"findings\": [");
+            for (int i = 0; i < findings.size(); i++) {
+                Finding finding = findings.get(i);
+                json.append(i == 0 ? "\n" : ",\n");
+                json.append("    {\"check\": ").append(RunReport.quote(finding.check));
+                json.append(", \"status\": ").append(RunReport.quote(finding.status.name()));
+                json.append(", \"item\": ").append(RunReport.quote(finding.item));
+                json.append(", \"subject\": ").append(RunReport.quote(finding.subject));
+                json.append(", \"detail\": ").append(RunReport.quote(finding.detail)).append('}');
+            }
+            json.append(findings.isEmpty() ? "]\n" : "\n  ]\n");
+            json.append("}\n");
+            return json.toString();
+        }
+
+        private String toCsv() {
+            StringBuilder csv = new StringBuilder(64 + findings.size() * 128);
+            csv.append("check,status,item,subject,detail\r\n");
+            for (Finding finding : findings) {
+                csv.append(csvField(finding.check)).append(',')
+                    .append(csvField(finding.status.name())).append(',')
+                    .append(csvField(finding.item)).append(',')
+                    .append(csvField(finding.subject)).append(',')
+                    .append(csvField(finding.detail)).append("\r\n");
+            }
+            return csv.toString();
+        }
+
+        private static String csvField(String value) {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 &&
+                value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+
+    /**
+     * The findings of a single item and, for a route, the jobs it uses.
+     */
+    private static final class ItemAudit {
+        private final List<Finding> findings = new ArrayList<>();
+        private final Collection<File> routeJobs = new ArrayList<>();
+    }
+
+    /**
+     * Audits all items of a workspace.
+     *
+     * @param workspaceDir the workspace or project directory
+     * @return the findings, grouped by check and sorted by item
+     * @throws IOException if the workspace cannot be walked
+     */
+    public static Report audit(Path workspaceDir) throws IOException {
+        Instant startedAt = Instant.now();
+        Path root = workspaceDir.toAbsolutePath().normalize();
+        if (!Files.isDirectory(root)) {
+            throw new IllegalArgumentException("Path does not exist or is not a directory: " + root);
+        }
+
+        List<Path> items = RunMetrics.time(RunMetrics.Phase.WALK, () -> {
+            try (Stream<Path> allFiles = Files.walk(root)) {
+                return allFiles
+                    .filter(path -> path.getFileName().toString().endsWith(".item"))
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .collect(Collectors.toList());
+            }
+        });
+
+        List<Finding> findings = new ArrayList<>();
+        Map<Path, Set<String>> routesByJob = new TreeMap<>();
+        List<ItemAudit> itemAudits = BatchRunner.collect(items, item -> auditItem(root, item));
+        for (int i = 0; i < items.size(); i++) {
+            ItemAudit itemAudit = itemAudits.get(i);
+            findings.addAll(itemAudit.findings);
+            for (File job : itemAudit.routeJobs) {
+                routesByJob.computeIfAbsent(job.toPath().toAbsolutePath().normalize(), k -> new TreeSet<>())
+                    .add(items.get(i).getFileName().toString());
+            }
+        }
+
+        List<Path> jobs = new ArrayList<>(routesByJob.keySet());
+        findings.addAll(BatchRunner.collect(jobs, job -> auditJob(root, job, routesByJob.get(job))));
+
+        findings.sort(Comparator.comparing((Finding finding) -> checkOrder(finding.check))
+            .thenComparing(finding -> finding.item)
+            .thenComparing(finding -> finding.subject));
+        return new Report(root, startedAt, items.size(), findings);
+    }
+
+    private static ItemAudit auditItem(Path root, Path item) {
+        ItemAudit itemAudit = new ItemAudit();
+        String relativePath = relativize(root, item);
+        try {
+            boolean processItem = BatchRunner.isUnderProcessDirectory(item);
+            // Only items below process and routes are summarized; other items (metadata, contexts) are cheaply
+            // ruled out unless they contain a cTalendJob marker
+            if (!processItem && !ItemPrefilter.mayReferenceJobs(item)) {
+                return itemAudit;
+            }
+
+            ItemSummary summary = ItemCatalog.getDefault().getSummary(item);
+            if (processItem && summary.hasComponent("tRESTRequest")) {
+                InjectionRules.Evaluation evaluation = StatusInjector.evaluateStatusRules(summary);
+                itemAudit.findings.add(evaluation.getUnmetRequirement().isPresent()
+                    ? new Finding(CHECK_STATUS, Status.OK, relativePath, "", "")
+                    : new Finding(CHECK_STATUS, Status.MISSING, relativePath, "", describe(evaluation)));
+            }
+            if (summary.hasComponent("cTalendJob")) {
+                auditRoute(item, relativePath, itemAudit);
+            }
+        } catch (Exception e) {
+            itemAudit.findings.add(new Finding(CHECK_ITEM, Status.ERROR, relativePath, "", String.valueOf(e)));
+        }
+        return itemAudit;
+    }
+
+    private static void auditRoute(Path route, String relativePath, ItemAudit itemAudit) throws Exception {
+        WorkspaceIndex index = RouteItemHelper.getWorkspaceIndex(route.toString());
+        for (JobRef job : RouteItemHelper.getJobReferencesByRouteItemPath(route.toString())) {
+            if (job.isLatest()) {
+                itemAudit.findings.add(auditLatestReference(index, relativePath, job));
+            }
+        }
+
+        try {
+            itemAudit.routeJobs.addAll(RouteItemHelper.resolveJobItemsByRouteItemPath(route.toString()).values());
+        } catch (IOException e) {
+            itemAudit.findings.add(new Finding(CHECK_LOGGER, Status.ERROR, relativePath, "", e.getMessage()));
+        }
+    }
+
+    private static Finding auditLatestReference(WorkspaceIndex index, String relativePath, JobRef job) {
+        String subject = job.toString();
+        Set<String> versions = index.getVersions(job.getJobName());
+        Optional<String> latest = index.findLatestVersion(job.getJobName());
+        if (latest.isEmpty() || versions.isEmpty()) {
+            return new Finding(CHECK_LATEST, Status.ERROR, relativePath, subject, "no version of the job found");
+        }
+
+        String lexicallyLatest = Collections.max(versions);
+        if (!lexicallyLatest.equals(latest.get())) {
+            return new Finding(CHECK_LATEST, Status.MISMATCH, relativePath, subject, "resolves to " +
+                latest.get() + ", but string order would pick " + lexicallyLatest);
+        }
+
+        List<File> latestItems = index.findItems(job.getJobName() + "_" + latest.get() + ".item");
+        if (latestItems.size() > 1) {
+            return new Finding(CHECK_LATEST, Status.MISMATCH, relativePath, subject, "resolves to " +
+                latest.get() + ", which exists in " + latestItems.size() + " folders; using " +
+                latestItems.get(0).getAbsolutePath());
+        }
+        return new Finding(CHECK_LATEST, Status.OK, relativePath, subject, "resolves to " + latest.get());
+    }
+
+    private static Finding auditJob(Path root, Path job, Set<String> routes) {
+        String relativePath = relativize(root, job);
+        String subject = "used by " + String.join(" ", routes);
+        try {
+            InjectionRules.Evaluation evaluation = LoggerInjector.evaluateLoggerRules(
+                ItemCatalog.getDefault().getSummary(job), ExternalCode.T_JAVA_LOGCONFIG_CODE);
+            return evaluation.getActions().isEmpty()
+                ? new Finding(CHECK_LOGGER, Status.OK, relativePath, subject, "")
+                : new Finding(CHECK_LOGGER, Status.MISSING, relativePath, subject, describe(evaluation));
+        } catch (Exception e) {
+            return new Finding(CHECK_LOGGER, Status.ERROR, relativePath, subject, String.valueOf(e));
+        }
+    }
+
+    /**
+     * Describes the changes the injection would make, without the injected code.
+     */
+    private static String describe(InjectionRules.Evaluation evaluation) {
+        return evaluation.getActions().stream()
+            .map(action -> action.getType() + " " + String.join(" ", action.getArguments().subList(0,
+                Math.min(2, action.getArguments().size()))))
+            .collect(Collectors.joining("; "));
+    }
+
+    private static int checkOrder(String check) {
+        return Arrays.asList(CHECK_ITEM, CHECK_STATUS, CHECK_LOGGER, CHECK_LATEST).indexOf(check);
+    }
+
+    private static String relativize(Path root, Path item) {
+        return root.relativize(item.toAbsolutePath().normalize()).toString().replace(File.separatorChar, '/');
+    }
+}
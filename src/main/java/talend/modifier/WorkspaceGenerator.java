@@ -0,0 +1,334 @@
+package talend.modifier;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generator of synthetic Talend workspaces for load and scale testing.
+ * <p>
+ * The generated project contains versioned jobs under {@code process/jobs} (with tPrejob, tJava, tRunJob and
+ * generic nodes, OnComponentOk chains and additional flow connections), services with a tRESTRequest under
+ * {@code process/services}, and routes with cTalendJob references under {@code routes}, half of them
+ * pointing to "Latest". Elements are built with the same shapes {@link TalendComponentsHelper} produces.
+ * The output only depends on the {@link Settings}, so the same seed always yields the same workspace.
+ */
+public class WorkspaceGenerator {
+
+    private static final String[] GENERIC_COMPONENTS = {"tWarn", "tLogRow", "tMap", "tFilterRow", "tFlowToIterate"};
+
+    /**
+     * Size parameters of a generated workspace.
+     */
+    public static class Settings {
+        private int jobs = 100;
+        private int versionsPerJob = 3;
+        private int nodesPerJob = 50;
+        private int extraConnectionsPerJob = 25;
+        private int services = 10;
+        private int routes = 10;
+        private int referencesPerRoute = 20;
+        private long seed = 42;
+
+        /**
+         * Parses settings given as {@code key=value} arguments, e.g. {@code jobs=1000 seed=7}.
+         *
+         * @param arguments the arguments to parse
+         * @return the settings, with defaults for all keys not given
+         */
+        public static Settings parse(List<String> arguments) {
+            Settings settings = new Settings();
+            for (String argument : arguments) {
+                int separator = argument.indexOf('=');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Expected key=value but got: " + argument);
+                }
+                String key = argument.substring(0, separator);
+                long value = Long.parseLong(argument.substring(separator + 1));
+                switch (key) {
+                    case "jobs": settings.jobs((int) value); break;
+                    case "versions": settings.versionsPerJob((int) value); break;
+                    case "nodes": settings.nodesPerJob((int) value); break;
+                    case "connections": settings.extraConnectionsPerJob((int) value); break;
+                    case "services": settings.services((int) value); break;
+                    case "routes": settings.routes((int) value); break;
+                    case "refs": settings.referencesPerRoute((int) value); break;
+                    case "seed": settings.seed(value); break;
+                    default: throw new IllegalArgumentException("Unknown setting: " + key);
+                }
+            }
+            return settings;
+        }
+
+        public Settings jobs(int jobs) {
+            this.jobs = jobs;
+            return this;
+        }
+
+        public Settings versionsPerJob(int versionsPerJob) {
+            this.versionsPerJob = versionsPerJob;
+            return this;
+        }
+
+        public Settings nodesPerJob(int nodesPerJob) {
+            this.nodesPerJob = nodesPerJob;
+            return this;
+        }
+
+        public Settings extraConnectionsPerJob(int extraConnectionsPerJob) {
+            this.extraConnectionsPerJob = extraConnectionsPerJob;
+            return this;
+        }
+
+        public Settings services(int services) {
+            this.services = services;
+            return this;
+        }
+
+        public Settings routes(int routes) {
+            this.routes = routes;
+            return this;
+        }
+
+        public Settings referencesPerRoute(int referencesPerRoute) {
+            this.referencesPerRoute = referencesPerRoute;
+            return this;
+        }
+
+        public Settings seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "jobs=" + jobs + " versions=" + versionsPerJob + " nodes=" + nodesPerJob +
+                " connections=" + extraConnectionsPerJob + " services=" + services + " routes=" + routes +
+                " refs=" + referencesPerRoute + " seed=" + seed;
+        }
+    }
+
+    /**
+     * Generates a project into the given directory.
+     *
+     * @param projectDir the project directory; {@code process} and {@code routes} are created below it
+     * @param settings   the size parameters
+     * @return the number of items written
+     * @throws Exception if an item cannot be written
+     */
+    public static int generate(Path projectDir, Settings settings) throws Exception {
+        Random random = new Random(settings.seed);
+        Path processDir = projectDir.resolve("process");
+        int items = 0;
+
+        for (int job = 0; job < settings.jobs; job++) {
+            Path folder = processDir.resolve("jobs").resolve("folder_" + (job % 10));
+            for (int version = 0; version < settings.versionsPerJob; version++) {
+                List<String> calledJobs = new ArrayList<>();
+                for (int call = 0; call < Math.min(job, 3); call++) {
+                    calledJobs.add(jobName(random.nextInt(job)));
+                }
+                Document doc = newJob(settings.nodesPerJob, settings.extraConnectionsPerJob, calledJobs, random);
+                writeItem(doc, folder.resolve(jobName(job) + "_" + formatVersion(version) + ".item"));
+                items++;
+            }
+        }
+
+        for (int service = 0; service < settings.services; service++) {
+            Document doc = newService(settings.nodesPerJob, random);
+            writeItem(doc, processDir.resolve("services").resolve("service" + service + "_0.1.item"));
+            items++;
+        }
+
+        for (int route = 0; route < settings.routes && settings.jobs > 0; route++) {
+            List<String[]> references = new ArrayList<>();
+            for (int reference = 0; reference < settings.referencesPerRoute; reference++) {
+                String version = random.nextBoolean()
+                    ? "Latest"
+                    : formatVersion(random.nextInt(Math.max(1, settings.versionsPerJob)));
+                references.add(new String[]{jobName(random.nextInt(settings.jobs)), version});
+            }
+            writeItem(newRoute(references), projectDir.resolve("routes").resolve(routeName(route) + "_0.1.item"));
+            items++;
+        }
+        return items;
+    }
+
+    public static String jobName(int job) {
+        return "job" + job;
+    }
+
+    public static String routeName(int route) {
+        return "route" + route;
+    }
+
+    /**
+     * Formats the n-th version of an item as {@code major.minor}, starting with {@code 0.1}.
+     */
+    public static String formatVersion(int version) {
+        int number = version + 1;
+        return number / 10 + "." + number % 10;
+    }
+
+    /**
+     * Creates a job starting with a tPrejob, followed by a chain of nodes connected with OnComponentOk and
+     * additional flow connections between random pairs of nodes. All connections point forward, so the
+     * job graph has no cycles.
+     *
+     * @param nodeCount        the number of nodes, including the tPrejob
+     * @param extraConnections the number of flow connections in addition to the chain
+     * @param calledJobs       the jobs called through tRunJob nodes with version "Latest"
+     * @param random           the source of randomness
+     * @return the job document
+     */
+    public static Document newJob(int nodeCount, int extraConnections, List<String> calledJobs, Random random) {
+        Document doc = newProcess();
+        Element root = doc.getDocumentElement();
+
+        List<String> names = new ArrayList<>();
+        root.appendChild(TalendComponentsHelper.getNewTPreJobComponent(doc));
+        names.add(TalendComponentsHelper.DEFAULT_PREJOB_UNIQUE_NAME);
+
+        for (int i = 1; i < nodeCount; i++) {
+            Element node;
+            int calledJob = i - 1;
+            if (calledJob < calledJobs.size()) {
+                node = newNode(doc, "tRunJob", "tRunJob_" + i);
+                node.appendChild(newParameter(doc, "PROCESS_TYPE", "PROCESS", calledJobs.get(calledJob)));
+                node.appendChild(newParameter(doc, "TECHNICAL", "PROCESS:PROCESS_TYPE_VERSION", "Latest"));
+            } else if (random.nextInt(4) == 0) {
+                node = TalendComponentsHelper.getNewTJavaComponent(doc, "tJava_" + i,
+                    "System.out.println(\"step " + i + "\");");
+            } else {
+                String componentName = GENERIC_COMPONENTS[random.nextInt(GENERIC_COMPONENTS.length)];
+                node = newNode(doc, componentName, componentName + "_" + i);
+            }
+            root.appendChild(node);
+            names.add(TalendComponentsHelper.getParameterValue(node, "UNIQUE_NAME").orElseThrow());
+        }
+
+        for (int i = 1; i < names.size(); i++) {
+            root.appendChild(TalendComponentsHelper.getNewOnComponentOkConnectionComponent(doc,
+                "OnComponentOk" + i, names.get(i - 1), names.get(i)));
+        }
+
+        for (int i = 0; i < extraConnections && names.size() > 2; i++) {
+            int source = 1 + random.nextInt(names.size() - 2);
+            int target = source + 1 + random.nextInt(names.size() - source - 1);
+            root.appendChild(TalendComponentsHelper.getNewMainConnectionComponentWithoutSchema(doc,
+                names.get(source), names.get(target), "row" + (i + 1)));
+        }
+        return doc;
+    }
+
+    /**
+     * Creates a service: a job whose first node is a tRESTRequest with one output flow.
+     *
+     * @param nodeCount the number of nodes following the tRESTRequest
+     * @param random    the source of randomness
+     * @return the service document
+     */
+    public static Document newService(int nodeCount, Random random) {
+        Document doc = newJob(nodeCount, nodeCount / 4, List.of(), random);
+        Element root = doc.getDocumentElement();
+
+        Element restRequest = newNode(doc, "tRESTRequest", "tRESTRequest_1");
+        Element schemas = doc.createElement("elementParameter");
+        schemas.setAttribute("field", "TABLE");
+        schemas.setAttribute("name", "SCHEMAS");
+        schemas.appendChild(newElementValue(doc, "SCHEMA", "getThing"));
+        schemas.appendChild(newElementValue(doc, "HTTP_VERB", "GET"));
+        restRequest.appendChild(schemas);
+        Element metadata = doc.createElement("metadata");
+        metadata.setAttribute("connector", "FLOW");
+        metadata.setAttribute("label", "getThing");
+        metadata.setAttribute("name", "getThing");
+        restRequest.appendChild(metadata);
+        root.insertBefore(restRequest, root.getFirstChild().getNextSibling());
+
+        Element logRow = newNode(doc, "tLogRow", "tLogRow_rest");
+        root.appendChild(logRow);
+        root.appendChild(TalendComponentsHelper.getNewMainConnectionComponentWithoutSchema(doc,
+            "tRESTRequest_1", "tLogRow_rest", "getThing"));
+        return doc;
+    }
+
+    /**
+     * Creates a route with one cTalendJob node per reference.
+     *
+     * @param references pairs of job name and version, which may be "Latest"
+     * @return the route document
+     */
+    public static Document newRoute(List<String[]> references) {
+        Document doc = newProcess();
+        Element root = doc.getDocumentElement();
+        for (int i = 0; i < references.size(); i++) {
+            Element node = newNode(doc, "cTalendJob", "cTalendJob_" + (i + 1));
+            node.appendChild(newParameter(doc, "TEXT", "SELECTED_JOB_NAME", references.get(i)[0]));
+            node.appendChild(newParameter(doc, "TEXT", "SELECTED_JOB_NAME:PROCESS_TYPE_VERSION", references.get(i)[1]));
+            root.appendChild(node);
+        }
+        return doc;
+    }
+
+    /**
+     * Writes a generated document, creating its directory if needed.
+     *
+     * @param doc  the document
+     * @param file the item to write
+     * @throws Exception if the item cannot be written
+     */
+    public static void writeItem(Document doc, Path file) throws Exception {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        FileHelper.saveDocument(doc, file.toString());
+    }
+
+    private static Document newProcess() {
+        Document doc = FileHelper.newDocument();
+        Element root = doc.createElement("talendfile:ProcessType");
+        root.setAttribute("xmi:version", "2.0");
+        root.setAttribute("xmlns:xmi", "http://www.omg.org/XMI");
+        root.setAttribute("xmlns:talendfile", "platform:/resource/org.talend.model/model/TalendFile.xsd");
+        root.setAttribute("defaultContext", "Default");
+        root.setAttribute("jobType", "Standard");
+        doc.appendChild(root);
+
+        Element context = doc.createElement("context");
+        context.setAttribute("confirmationNeeded", "false");
+        context.setAttribute("name", "Default");
+        root.appendChild(context);
+        return doc;
+    }
+
+    private static Element newNode(Document doc, String componentName, String uniqueName) {
+        Element node = doc.createElement("node");
+        node.setAttribute("componentName", componentName);
+        node.setAttribute("componentVersion", "0.101");
+        node.setAttribute("offsetLabelX", "0");
+        node.setAttribute("offsetLabelY", "0");
+        node.setAttribute("posX", "0");
+        node.setAttribute("posY", "0");
+        node.appendChild(newParameter(doc, "TEXT", "UNIQUE_NAME", uniqueName));
+        return node;
+    }
+
+    private static Element newParameter(Document doc, String field, String name, String value) {
+        Element param = doc.createElement("elementParameter");
+        param.setAttribute("field", field);
+        param.setAttribute("name", name);
+        param.setAttribute("value", value);
+        return param;
+    }
+
+    private static Element newElementValue(Document doc, String elementRef, String value) {
+        Element elementValue = doc.createElement("elementValue");
+        elementValue.setAttribute("elementRef", elementRef);
+        elementValue.setAttribute("value", value);
+        return elementValue;
+    }
+}
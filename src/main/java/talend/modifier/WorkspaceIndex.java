@@ -0,0 +1,376 @@
+package talend.modifier;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+
+/**
+ * Index of all items below a {@code process} directory.
+ * <p>
+ * The index is built with a single walk of the directory tree and maps item file names to their location
+ * as well as job names to their available versions. It is persisted on disk and reused by later runs as long
+ * as none of the indexed directories has been modified since (adding, removing or renaming an item always
+ * changes the modification time of its parent directory). Index files live in the
+ * {@linkplain FileHelper#getCacheDirectory() cache directory}, never in the workspace. Within one JVM an index
+ * is built or loaded only once per {@code process} directory.
+ * <p>
+ * Items written by the tool itself replace the item through a temporary file, which also changes the modification
+ * time of the directory. Such writes are {@linkplain #recordReplacement(Path) recorded}, and a modified directory
+ * the tool wrote to is listed instead: if it still holds the indexed items and subdirectories, the index takes over
+ * its new modification time rather than being rebuilt.
+ */
+public class WorkspaceIndex {
+
+    private static final String INDEX_HEADER = "# talendJobModifier process index v1";
+    private static final Map<File, WorkspaceIndex> CACHE = new ConcurrentHashMap<>();
+
+    private final File processDir;
+    private final Map<String, Long> directoryModificationTimes;
+    private final List<String> relativeItemPaths;
+    private final Set<String> writtenDirectories = ConcurrentHashMap.newKeySet();
+    private final Map<String, File> itemsByName = new HashMap<>();
+    private final Map<String, List<File>> duplicateItemsByName = new HashMap<>();
+    private final Map<String, Map<String, File>> itemsByJobNameAndVersion = new HashMap<>();
+    private final Map<String, String> latestVersionsByJobName;
+
+    private WorkspaceIndex(File processDir, Map<String, Long> directoryModificationTimes,
+                           List<String> relativeItemPaths) {
+        this.processDir = processDir;
+        this.directoryModificationTimes = directoryModificationTimes;
+        this.relativeItemPaths = relativeItemPaths;
+
+        for (String relativePath : relativeItemPaths) {
+            File item = new File(processDir, relativePath);
+            String fileName = item.getName();
+            File first = itemsByName.putIfAbsent(fileName, item);
+            if (first != null) {
+                duplicateItemsByName.computeIfAbsent(fileName, k -> new ArrayList<>(List.of(first))).add(item);
+            }
+
+            Matcher matcher = LatestVersionResolver.JOB_ITEM_PATTERN.matcher(fileName);
+            if (matcher.matches()) {
+                itemsByJobNameAndVersion.computeIfAbsent(matcher.group(1), k -> new HashMap<>())
+                    .putIfAbsent(matcher.group(2) + "." + matcher.group(3), item);
+            }
+        }
+
+        this.latestVersionsByJobName = LatestVersionResolver.collectLatestVersions(itemsByName.keySet().stream());
+    }
+
+    /**
+     * Returns the index of the given {@code process} directory, loading it from disk when it is still valid
+     * or rebuilding it otherwise.
+     *
+     * @param processDir the {@code process} directory to index
+     * @return the index of the directory
+     * @throws IOException if the directory cannot be read
+     */
+    public static WorkspaceIndex forProcessDirectory(File processDir) throws IOException {
+        File canonicalDir = processDir.getCanonicalFile();
+        try {
+            return CACHE.computeIfAbsent(canonicalDir, dir -> {
+                try {
+                    return loadOrBuild(dir);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Drops the in-memory index of the given directory so that the next lookup revalidates it against disk.
+     *
+     * @param processDir the {@code process} directory whose index should be dropped
+     * @throws IOException if the canonical path of the directory cannot be resolved
+     */
+    public static void invalidate(File processDir) throws IOException {
+        CACHE.remove(processDir.getCanonicalFile());
+    }
+
+    /**
+     * Drops every in-memory index whose directories have been modified since it was built or loaded, so that
+     * long-running modes see items added, removed or renamed in between. Directories modified only by the tool's
+     * own {@linkplain #recordReplacement(Path) replacements} keep their index.
+     *
+     * @return {@code true} if at least one index was dropped
+     */
+    public static boolean dropOutdated() {
+        return CACHE.values().removeIf(index -> !index.isUpToDate());
+    }
+
+    /**
+     * Stores every in-memory index whose directories were modified only by the tool's own
+     * {@linkplain #recordReplacement(Path) replacements}, so that the next run can load it instead of walking the
+     * workspace again. Indexes outdated by other changes are left to be rebuilt by the next run.
+     */
+    public static void saveAll() {
+        CACHE.values().forEach(WorkspaceIndex::isUpToDate);
+    }
+
+    /**
+     * Records that the tool itself has replaced an item through a temporary file, so that the resulting change of
+     * the modification time of its directory does not outdate the indexes containing it.
+     *
+     * @param item the replaced item
+     */
+    public static void recordReplacement(Path item) {
+        if (CACHE.isEmpty()) {
+            return;
+        }
+        Path dir;
+        try {
+            dir = item.toAbsolutePath().getParent().toFile().getCanonicalFile().toPath();
+        } catch (IOException e) {
+            return;
+        }
+        for (WorkspaceIndex index : CACHE.values()) {
+            Path root = index.processDir.toPath();
+            if (dir.startsWith(root)) {
+                index.writtenDirectories.add(toRelativeName(root, dir));
+            }
+        }
+    }
+
+    /**
+     * Finds an item by its file name, e.g. {@code myJob_0.1.item}.
+     *
+     * @param fileName the file name of the item
+     * @return an Optional containing the item file, or an empty Optional if not indexed
+     */
+    public Optional<File> findItem(String fileName) {
+        return Optional.ofNullable(itemsByName.get(fileName));
+    }
+
+    /**
+     * Finds all items with the given file name. There is more than one if the same item has been copied to
+     * several folders; {@link #findItem(String)} returns the first of them in path order.
+     *
+     * @param fileName the file name of the item
+     * @return the items, in path order; empty if not indexed
+     */
+    public List<File> findItems(String fileName) {
+        List<File> duplicates = duplicateItemsByName.get(fileName);
+        if (duplicates != null) {
+            return Collections.unmodifiableList(duplicates);
+        }
+        File item = itemsByName.get(fileName);
+        return item == null ? Collections.emptyList() : List.of(item);
+    }
+
+    /**
+     * Finds the item of the given job version.
+     *
+     * @param jobName the name of the job
+     * @param version the version of the job, e.g. {@code 0.1}
+     * @return an Optional containing the item file, or an empty Optional if not indexed
+     */
+    public Optional<File> findJobItem(String jobName, String version) {
+        return Optional.ofNullable(itemsByJobNameAndVersion.getOrDefault(jobName, Collections.emptyMap())
+            .get(version));
+    }
+
+    /**
+     * Returns all indexed versions of the given job.
+     *
+     * @param jobName the name of the job
+     * @return an unmodifiable set of the versions of the job, empty if the job is unknown
+     */
+    public Set<String> getVersions(String jobName) {
+        return Collections.unmodifiableSet(itemsByJobNameAndVersion.getOrDefault(jobName,
+            Collections.emptyMap()).keySet());
+    }
+
+    /**
+     * Finds the highest indexed version of the given job.
+     *
+     * @param jobName the name of the job
+     * @return an Optional containing the latest version, or an empty Optional if the job is unknown
+     */
+    public Optional<String> findLatestVersion(String jobName) {
+        return Optional.ofNullable(latestVersionsByJobName.get(jobName));
+    }
+
+    /**
+     * Returns the highest indexed version of every job.
+     *
+     * @return an unmodifiable map of job names to their latest version
+     */
+    public Map<String, String> getLatestVersions() {
+        return latestVersionsByJobName;
+    }
+
+    public File getProcessDir() {
+        return processDir;
+    }
+
+    private static WorkspaceIndex loadOrBuild(File processDir) throws IOException {
+        Path indexFile = getIndexFile(processDir);
+        if (Files.isRegularFile(indexFile)) {
+            Optional<WorkspaceIndex> stored = load(processDir, indexFile);
+            if (stored.isPresent() && stored.get().isUpToDate()) {
+                return stored.get();
+            }
+        }
+
+        WorkspaceIndex index = build(processDir);
+        index.store(indexFile);
+        return index;
+    }
+
+    private boolean isUpToDate() {
+        boolean refreshed = false;
+        for (Map.Entry<String, Long> entry : directoryModificationTimes.entrySet()) {
+            File dir = entry.getKey().isEmpty() ? processDir : new File(processDir, entry.getKey());
+            if (!dir.isDirectory()) {
+                return false;
+            }
+            // Read before listing the directory, so a change during the listing still outdates the index later
+            long lastModified = dir.lastModified();
+            if (lastModified != entry.getValue()) {
+                if (!writtenDirectories.contains(entry.getKey()) || !hasIndexedEntries(entry.getKey(), dir.toPath())) {
+                    return false;
+                }
+                entry.setValue(lastModified);
+                writtenDirectories.remove(entry.getKey());
+                refreshed = true;
+            }
+        }
+        if (refreshed) {
+            store(getIndexFile(processDir));
+        }
+        return !directoryModificationTimes.isEmpty();
+    }
+
+    /**
+     * @return {@code true} if the directory holds exactly the items and subdirectories indexed for it
+     */
+    private boolean hasIndexedEntries(String relativeDir, Path dir) {
+        Set<String> entries = new HashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                BasicFileAttributes attrs =
+                    Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (attrs.isDirectory()) {
+                    entries.add("D " + toRelativeName(processDir.toPath(), path));
+                } else if (attrs.isRegularFile() && path.getFileName().toString().endsWith(".item")) {
+                    entries.add("F " + toRelativeName(processDir.toPath(), path));
+                }
+            }
+        } catch (IOException e) {
+            return false;
+        }
+
+        Set<String> indexedEntries = new HashSet<>();
+        for (String relativeName : directoryModificationTimes.keySet()) {
+            if (!relativeName.isEmpty() && getParentName(relativeName).equals(relativeDir)) {
+                indexedEntries.add("D " + relativeName);
+            }
+        }
+        for (String relativePath : relativeItemPaths) {
+            if (getParentName(relativePath).equals(relativeDir)) {
+                indexedEntries.add("F " + relativePath);
+            }
+        }
+        return entries.equals(indexedEntries);
+    }
+
+    private static String getParentName(String relativeName) {
+        int separator = relativeName.lastIndexOf('/');
+        return separator < 0 ? "" : relativeName.substring(0, separator);
+    }
+
+    private static WorkspaceIndex build(File processDir) throws IOException {
+        Path root = processDir.toPath();
+        Map<String, Long> directoryModificationTimes = new LinkedHashMap<>();
+        List<String> relativeItemPaths = new ArrayList<>();
+
+        RunMetrics.time(RunMetrics.Phase.WALK, () -> walk(root, directoryModificationTimes, relativeItemPaths));
+
+        Collections.sort(relativeItemPaths);
+        return new WorkspaceIndex(processDir, directoryModificationTimes, relativeItemPaths);
+    }
+
+    private static void walk(Path root, Map<String, Long> directoryModificationTimes,
+                             List<String> relativeItemPaths) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                directoryModificationTimes.put(toRelativeName(root, dir), dir.toFile().lastModified());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && file.getFileName().toString().endsWith(".item")) {
+                    relativeItemPaths.add(toRelativeName(root, file));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static String toRelativeName(Path root, Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private static Optional<WorkspaceIndex> load(File processDir, Path indexFile) {
+        Map<String, Long> directoryModificationTimes = new LinkedHashMap<>();
+        List<String> relativeItemPaths = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            if (!INDEX_HEADER.equals(reader.readLine()) ||
+                !("R " + processDir.getAbsolutePath()).equals(reader.readLine())) {
+                return Optional.empty();
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("D ")) {
+                    int separator = line.indexOf(' ', 2);
+                    directoryModificationTimes.put(line.substring(separator + 1),
+                        Long.parseLong(line.substring(2, separator)));
+                } else if (line.startsWith("F ")) {
+                    relativeItemPaths.add(line.substring(2));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new WorkspaceIndex(processDir, directoryModificationTimes, relativeItemPaths));
+    }
+
+    private void store(Path indexFile) {
+        try {
+            FileHelper.writeAtomically(indexFile, tempFile -> {
+                try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                    writer.write(INDEX_HEADER);
+                    writer.newLine();
+                    writer.write("R " + processDir.getAbsolutePath());
+                    writer.newLine();
+                    for (Map.Entry<String, Long> entry : directoryModificationTimes.entrySet()) {
+                        writer.write("D " + entry.getValue() + " " + entry.getKey());
+                        writer.newLine();
+                    }
+                    for (String relativePath : relativeItemPaths) {
+                        writer.write("F " + relativePath);
+                        writer.newLine();
+                    }
+                }
+            });
+        } catch (IOException e) {
+            System.out.println("Unable to store workspace index " + indexFile + ": " + e.getMessage());
+        }
+    }
+
+    private static Path getIndexFile(File processDir) {
+        String key = Integer.toHexString(processDir.getAbsolutePath().hashCode());
+        return FileHelper.getCacheDirectory().resolve("process-" + key + ".index");
+    }
+}
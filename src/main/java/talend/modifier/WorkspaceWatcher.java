@@ -0,0 +1,245 @@
+package talend.modifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Watches a workspace and injects into new or changed items as they appear.
+ * <p>
+ * Events of a burst (e.g. an export writing many items) are collected until no event arrived for the debounce
+ * interval ({@code modifier.watch.debounce} milliseconds, 500 by default), then handled as one batch:
+ * <ul>
+ *     <li>the logger is injected into changed jobs that belong to the job closure of any route, and into jobs
+ *     that have just entered that closure, e.g. because a new version became "Latest" or a route changed;</li>
+ *     <li>status handling is injected into changed items with a tRESTRequest.</li>
+ * </ul>
+ * Items written by the watcher itself are recognized by their size and modification time and ignored, so its
+ * own writes never trigger another batch. Workspace indexes are revalidated before every batch, which keeps the
+ * resolution of "Latest" versions up to date.
+ */
+public class WorkspaceWatcher {
+
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 500;
+
+    private final Path workspaceDir;
+    private final long debounceMillis;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    private final Set<Path> routes = new TreeSet<>();
+    private final Map<Path, String> ownWrites = new HashMap<>();
+    private Set<Path> routeJobs = new HashSet<>();
+    private long lastBatchMillis;
+
+    private WorkspaceWatcher(Path workspaceDir) throws IOException {
+        this.workspaceDir = workspaceDir.toRealPath();
+        this.debounceMillis = Long.getLong("modifier.watch.debounce", DEFAULT_DEBOUNCE_MILLIS);
+        this.watchService = this.workspaceDir.getFileSystem().newWatchService();
+    }
+
+    /**
+     * Watches the workspace until the thread is interrupted or the watch service fails.
+     *
+     * @param workspaceDir the workspace or project directory
+     * @throws IOException if the workspace cannot be watched
+     */
+    public static void watch(Path workspaceDir) throws IOException {
+        if (!Files.isDirectory(workspaceDir)) {
+            throw new IllegalArgumentException("Path does not exist or is not a directory: "
+                + workspaceDir.toAbsolutePath());
+        }
+
+        WorkspaceWatcher watcher = new WorkspaceWatcher(workspaceDir);
+        try {
+            watcher.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            watcher.watchService.close();
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        lastBatchMillis = System.currentTimeMillis();
+        for (Path item : register(workspaceDir)) {
+            if (ItemPrefilter.mayReferenceJobs(item)) {
+                routes.add(item);
+            }
+        }
+        routeJobs = resolveRouteJobs();
+        System.out.println("Watching " + workspaceDir + " (" + routes.size() + " route(s), " +
+            routeJobs.size() + " job(s) referenced by routes)");
+
+        Set<Path> changedItems = new TreeSet<>();
+        while (true) {
+            WatchKey key = changedItems.isEmpty()
+                ? watchService.take()
+                : watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+            if (key == null) {
+                processBatch(changedItems);
+                changedItems.clear();
+                continue;
+            }
+
+            Path dir = watchedDirectories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    changedItems.addAll(findItemsModifiedSince(workspaceDir, lastBatchMillis));
+                } else if (dir != null) {
+                    Path path = dir.resolve((Path) event.context());
+                    if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                        changedItems.addAll(register(path));
+                    } else if (isItem(path)) {
+                        changedItems.add(path);
+                    }
+                }
+            }
+            if (!key.reset()) {
+                watchedDirectories.remove(key);
+            }
+        }
+    }
+
+    private void processBatch(Set<Path> changedItems) throws IOException {
+        long batchStarted = System.currentTimeMillis();
+        Set<Path> items = changedItems.stream()
+            .filter(Files::isRegularFile)
+            .filter(item -> !isOwnWrite(item))
+            .collect(Collectors.toCollection(TreeSet::new));
+        if (items.isEmpty()) {
+            return;
+        }
+
+        if (WorkspaceIndex.dropOutdated()) {
+            LatestVersionResolver.clearCache();
+        }
+        for (Path item : items) {
+            if (ItemPrefilter.mayReferenceJobs(item)) {
+                routes.add(item);
+            }
+        }
+        routes.removeIf(route -> !Files.isRegularFile(route));
+
+        Set<Path> previousRouteJobs = routeJobs;
+        routeJobs = resolveRouteJobs();
+
+        Map<Path, List<BatchRunner.ItemTask>> tasks = new TreeMap<>();
+        for (Path job : routeJobs) {
+            if (!previousRouteJobs.contains(job) || items.contains(job)) {
+                tasks.computeIfAbsent(job, k -> new ArrayList<>()).add(jobPath ->
+                    LoggerInjector.processItemFile(jobPath, ExternalCode.T_JAVA_LOGCONFIG_CODE));
+            }
+        }
+        for (Path item : items) {
+            if (BatchRunner.isUnderProcessDirectory(item) &&
+                ItemPrefilter.forStatus(item) == ItemPrefilter.Verdict.NEEDS_PARSE) {
+                tasks.computeIfAbsent(item, k -> new ArrayList<>()).add(StatusInjector::processServiceFile);
+            }
+        }
+
+        System.out.println();
+        System.out.println(items.size() + " changed item(s), " + tasks.size() + " to inject");
+        if (!tasks.isEmpty()) {
+            BatchRunner.run(new ArrayList<>(tasks.keySet()), itemPath -> {
+                for (BatchRunner.ItemTask task : tasks.get(Paths.get(itemPath))) {
+                    task.process(itemPath);
+                }
+            });
+            RunManifest.getDefault().save();
+            ItemCatalog.getDefault().save();
+        }
+
+        for (Path item : tasks.keySet()) {
+            recordOwnWrite(item);
+        }
+        lastBatchMillis = batchStarted;
+    }
+
+    private Set<Path> resolveRouteJobs() {
+        Set<Path> jobs = new HashSet<>();
+        for (Path route : routes) {
+            try {
+                for (File jobItem : RouteItemHelper.resolveJobItemsByRouteItemPath(route.toString()).values()) {
+                    jobs.add(jobItem.toPath().toAbsolutePath().normalize());
+                }
+            } catch (Exception e) {
+                System.out.println("Unable to resolve the jobs of route " + route + ": " + e.getMessage());
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Registers a directory tree with the watch service.
+     *
+     * @return the items found in the tree
+     */
+    private List<Path> register(Path root) throws IOException {
+        List<Path> items = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirectories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && isItem(file)) {
+                    items.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return items;
+    }
+
+    private static List<Path> findItemsModifiedSince(Path root, long millis) throws IOException {
+        List<Path> items = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && isItem(file) && attrs.lastModifiedTime().toMillis() >= millis) {
+                    items.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return items;
+    }
+
+    private void recordOwnWrite(Path item) {
+        ownWrites.put(item, fingerprint(item));
+    }
+
+    /**
+     * An item is considered unchanged since the watcher wrote it as long as its size and modification time
+     * are the same.
+     */
+    private boolean isOwnWrite(Path item) {
+        String recorded = ownWrites.get(item);
+        if (recorded != null && recorded.equals(fingerprint(item))) {
+            return true;
+        }
+        ownWrites.remove(item);
+        return false;
+    }
+
+    private static String fingerprint(Path item) {
+        try {
+            return Files.size(item) + "/" + Files.getLastModifiedTime(item).toMillis();
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static boolean isItem(Path path) {
+        return path.getFileName().toString().endsWith(".item");
+    }
+}
@@ -0,0 +1,198 @@
+package talend.modifier;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Minimal XML writer that escapes attribute values the way Talend items expect (line breaks of code
+ * parameters are kept as character references) and writes empty elements in their short form.
+ */
+class XmlFragmentWriter implements Closeable {
+    private final Writer out;
+    private final String indentation;
+    private boolean startTagOpen;
+
+    XmlFragmentWriter(Writer out) {
+        this(out, "  ");
+    }
+
+    /**
+     * @param indentation the indentation of a single level, used for newly appended child elements
+     */
+    XmlFragmentWriter(Writer out, String indentation) {
+        this.out = out;
+        this.indentation = indentation;
+    }
+
+    void declaration(String version, String encoding, Boolean standalone) throws IOException {
+        out.write("<?xml version=\"" + version + "\"");
+        if (encoding != null) {
+            out.write(" encoding=\"" + encoding + "\"");
+        }
+        if (standalone != null) {
+            out.write(" standalone=\"" + (standalone ? "yes" : "no") + "\"");
+        }
+        out.write("?>\n");
+    }
+
+    void startElement(XMLStreamReader reader) throws IOException {
+        closeStartTag();
+        out.write('<');
+        out.write(qualifiedName(reader.getPrefix(), reader.getLocalName()));
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            attribute(prefix == null || prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix,
+                reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            attribute(qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                reader.getAttributeValue(i));
+        }
+        startTagOpen = true;
+    }
+
+    void endElement(XMLStreamReader reader) throws IOException {
+        endElement(qualifiedName(reader.getPrefix(), reader.getLocalName()));
+    }
+
+    private void endElement(String name) throws IOException {
+        if (startTagOpen) {
+            out.write("/>");
+            startTagOpen = false;
+        } else {
+            out.write("</" + name + ">");
+        }
+    }
+
+    /**
+     * Writes a DOM element at the given indentation level. Existing content is written exactly as it is,
+     * only newly appended child elements are indented.
+     */
+    void element(Element element, int level) throws IOException {
+        closeStartTag();
+        out.write('<');
+        out.write(element.getTagName());
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Node attribute = attributes.item(i);
+            attribute(attribute.getNodeName(), attribute.getNodeValue());
+        }
+        startTagOpen = true;
+
+        // Trailing child elements not followed by any text are new ones; they replace the closing
+        // indentation of the element and get their own.
+        NodeList children = element.getChildNodes();
+        int firstNew = children.getLength();
+        while (firstNew > 0 && children.item(firstNew - 1).getNodeType() == Node.ELEMENT_NODE) {
+            firstNew--;
+        }
+        boolean hasNewChildren = firstNew < children.getLength();
+        int closingIndentation = hasNewChildren && firstNew > 0 &&
+            children.item(firstNew - 1).getNodeType() == Node.TEXT_NODE &&
+            children.item(firstNew - 1).getNodeValue().isBlank() ? firstNew - 1 : -1;
+
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+            if (i == closingIndentation) {
+                continue;
+            }
+            if (i >= firstNew) {
+                text("\n" + indentation.repeat(level + 1));
+            }
+            switch (child.getNodeType()) {
+                case Node.ELEMENT_NODE:
+                    element((Element) child, level + 1);
+                    break;
+                case Node.CDATA_SECTION_NODE:
+                    cdata(child.getNodeValue());
+                    break;
+                case Node.TEXT_NODE:
+                    text(child.getNodeValue());
+                    break;
+                case Node.COMMENT_NODE:
+                    comment(child.getNodeValue());
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (hasNewChildren) {
+            text("\n" + indentation.repeat(level));
+        }
+        endElement(element.getTagName());
+    }
+
+    void text(String text) throws IOException {
+        closeStartTag();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&': out.write("&amp;"); break;
+                case '<': out.write("&lt;"); break;
+                case '>': out.write("&gt;"); break;
+                case '\r': out.write("&#13;"); break;
+                default: out.write(c);
+            }
+        }
+    }
+
+    void cdata(String text) throws IOException {
+        raw("<![CDATA[" + text + "]]>");
+    }
+
+    void comment(String text) throws IOException {
+        raw("<!--" + text + "-->");
+    }
+
+    void processingInstruction(String target, String data) throws IOException {
+        raw("<?" + target + (data == null || data.isEmpty() ? "" : " " + data) + "?>");
+    }
+
+    void raw(String text) throws IOException {
+        closeStartTag();
+        out.write(text);
+    }
+
+    private void attribute(String name, String value) throws IOException {
+        out.write(' ');
+        out.write(name);
+        out.write("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&': out.write("&amp;"); break;
+                case '<': out.write("&lt;"); break;
+                case '>': out.write("&gt;"); break;
+                case '"': out.write("&quot;"); break;
+                case '\n': out.write("&#10;"); break;
+                case '\r': out.write("&#13;"); break;
+                case '\t': out.write("&#9;"); break;
+                default: out.write(c);
+            }
+        }
+        out.write('"');
+    }
+
+    static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    private void closeStartTag() throws IOException {
+        if (startTagOpen) {
+            out.write('>');
+            startTagOpen = false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
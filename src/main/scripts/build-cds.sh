@@ -0,0 +1,59 @@
+#!/usr/bin/env bash
+#
+# Creates an application class-data sharing (AppCDS) archive for the jar.
+#
+# A training run executes the usual commands against a small generated project in a single JVM (through
+# --daemon) and records the loaded classes; the archive is then dumped from that class list. Runs started
+# with -XX:SharedArchiveFile map the archived classes instead of loading and verifying them, which mostly
+# saves the JAXP, Xerces and Xalan classes behind FileHelper.
+#
+# The archive only works with the same JDK and the same jar path it was created with; the JVM silently
+# ignores it otherwise. Works with JDK 11 and later.
+#
+# Usage: build-cds.sh <jar> <outputDir>
+
+set -euo pipefail
+
+if [ $# -ne 2 ]; then
+    echo "Usage: $0 <jar> <outputDir>" >&2
+    exit 2
+fi
+
+JAR="$(cd "$(dirname "$1")" && pwd)/$(basename "$1")"
+mkdir -p "$2"
+OUT="$(cd "$2" && pwd)"
+JAVA="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+SCRIPTS="$(cd "$(dirname "${BASH_SOURCE[0]}")" && pwd)"
+
+WORK="$OUT/cds-training"
+CLASS_LIST="$OUT/talendJobModifier.classlist"
+ARCHIVE="$OUT/talendJobModifier.jsa"
+PROPERTIES=(-Dmodifier.manifest=false "-Dmodifier.cache.dir=$WORK/cache")
+
+rm -rf "$WORK" "$CLASS_LIST" "$ARCHIVE"
+"$JAVA" -cp "$JAR" talend.modifier.Main --generate "$WORK/P" \
+    jobs=20 versions=2 nodes=20 services=4 routes=2 refs=10 > /dev/null
+
+JOB="$(find "$WORK/P/process/jobs" -name '*.item' | sort | head -n 1)"
+SERVICE="$(find "$WORK/P/process/services" -name '*.item' | sort | head -n 1)"
+ROUTE="$(find "$WORK/P/routes" -name '*.item' | sort | head -n 1)"
+
+"$JAVA" -XX:DumpLoadedClassList="$CLASS_LIST" "${PROPERTIES[@]}" -cp "$JAR" talend.modifier.Main --daemon \
+    > /dev/null <<EOF
+--plan-log "$WORK/P"
+--log-item "$JOB"
+--status-svc "$SERVICE"
+--log-route "$ROUTE"
+--status-all "$WORK/P" --report "$WORK/report.json"
+quit
+EOF
+
+"$JAVA" -Xshare:dump -XX:SharedClassListFile="$CLASS_LIST" -XX:SharedArchiveFile="$ARCHIVE" -cp "$JAR" \
+    > /dev/null
+
+cp "$SCRIPTS/talend-modifier" "$OUT/talend-modifier"
+chmod +x "$OUT/talend-modifier"
+rm -rf "$WORK"
+
+echo "AppCDS archive: $ARCHIVE ($(wc -l < "$CLASS_LIST") classes)"
+echo "Launcher:       $OUT/talend-modifier"
@@ -0,0 +1,58 @@
+#!/usr/bin/env bash
+#
+# Measures the cold start of a single-item invocation (--log-item on a fresh copy of a generated job) with
+# class-data sharing disabled, with the default JDK archive only, and with the AppCDS archive of build-cds.sh.
+# Every invocation is a new JVM; the time to restore the item is not measured.
+#
+# Usage: startup-benchmark.sh <targetDir> [iterations]
+
+set -euo pipefail
+
+if [ $# -lt 1 ]; then
+    echo "Usage: $0 <targetDir> [iterations]" >&2
+    exit 2
+fi
+
+TARGET="$(cd "$1" && pwd)"
+ITERATIONS="${2:-10}"
+JAR="$(ls "$TARGET"/talendJobModifier-*.jar | head -n 1)"
+ARCHIVE="$TARGET/talendJobModifier.jsa"
+JAVA="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+
+WORK="$TARGET/startup-benchmark"
+PROPERTIES=(-Dmodifier.manifest=false "-Dmodifier.cache.dir=$WORK/cache")
+
+rm -rf "$WORK"
+"$JAVA" -cp "$JAR" talend.modifier.Main --generate "$WORK/P" \
+    jobs=1 versions=1 nodes=20 services=0 routes=0 > /dev/null
+PRISTINE="$(find "$WORK/P/process/jobs" -name '*.item' | head -n 1)"
+ITEM="$WORK/job_0.1.item"
+
+measure() {
+    local name="$1"
+    shift
+    local total=0 min=0 elapsed start
+    for ((i = 0; i < ITERATIONS; i++)); do
+        cp "$PRISTINE" "$ITEM"
+        start=$(date +%s%N)
+        "$JAVA" "$@" "${PROPERTIES[@]}" -cp "$JAR" talend.modifier.Main --log-item "$ITEM" > /dev/null
+        elapsed=$((($(date +%s%N) - start) / 1000000))
+        total=$((total + elapsed))
+        if [ "$min" -eq 0 ] || [ "$elapsed" -lt "$min" ]; then
+            min=$elapsed
+        fi
+    done
+    printf "%-14s %8d %8d\n" "$name" $((total / ITERATIONS)) "$min"
+}
+
+echo "Cold start of --log-item, $ITERATIONS run(s) each"
+printf "%-14s %8s %8s\n" "mode" "mean ms" "min ms"
+measure "no CDS" -Xshare:off
+measure "JDK CDS" -Xshare:auto
+if [ -f "$ARCHIVE" ]; then
+    measure "AppCDS" -Xshare:auto "-XX:SharedArchiveFile=$ARCHIVE"
+else
+    echo "No AppCDS archive at $ARCHIVE; run the appcds profile first."
+fi
+
+rm -rf "$WORK"